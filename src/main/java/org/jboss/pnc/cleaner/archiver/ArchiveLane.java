@@ -0,0 +1,44 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.archiver;
+
+import org.jboss.pnc.dto.Build;
+import org.jboss.pnc.enums.BuildStatus;
+
+/**
+ * Priority lanes of the archiver. Each lane is processed by its own workers, so builds in a lane never wait behind a
+ * backlog of another lane.
+ */
+public enum ArchiveLane {
+    /** Failed builds, on-call needs them categorized. */
+    ERRORS,
+    /** Temporary builds, the temporary builds cleaner waits for them to be archived. */
+    TEMPORARY,
+    /** Everything else. */
+    BULK;
+
+    public static ArchiveLane of(Build build) {
+        if (build.getStatus() == BuildStatus.SYSTEM_ERROR || build.getStatus() == BuildStatus.FAILED) {
+            return ERRORS;
+        }
+        if (Boolean.TRUE.equals(build.getTemporaryBuild())) {
+            return TEMPORARY;
+        }
+        return BULK;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.archiver;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.scheduler.Scheduled;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.pnc.client.BuildClient;
+import org.jboss.pnc.client.RemoteResourceException;
+import org.jboss.pnc.dto.Build;
+import org.jboss.pnc.enums.BuildProgress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.jboss.pnc.cleaner.archiver.BuildArchiver.BUILD_ARCHIVED;
+
+/**
+ * Builds waiting to be archived after a build-finished notification. Repeated notifications of the same build are
+ * merged while the build waits. The queue is drained periodically, so notifications arriving close together are
+ * archived as one batch. Notifications over the capacity of the queue are dropped, those builds are archived by the
+ * scheduled sweep of {@link BuildArchiver#archiveBuilds()}.
+ */
+@ApplicationScoped
+public class ArchiveQueue {
+
+    private static final String className = ArchiveQueue.class.getName();
+
+    private final Logger logger = LoggerFactory.getLogger(ArchiveQueue.class);
+
+    private final Set<String> pending = new LinkedHashSet<>();
+
+    @ConfigProperty(name = "buildArchiver.queue.maxSize", defaultValue = "10000")
+    int maxSize;
+
+    @ConfigProperty(name = "buildArchiver.queue.batchSize", defaultValue = "500")
+    int batchSize;
+
+    @Inject
+    BuildClient buildClient;
+
+    @Inject
+    BuildArchiver buildArchiver;
+
+    @Inject
+    MeterRegistry registry;
+
+    @PostConstruct
+    void init() {
+        registry.gauge(className + ".size", this, ArchiveQueue::size);
+    }
+
+    /**
+     * Adds the build to the queue.
+     *
+     * @return false if the build is already waiting or the queue is full
+     */
+    public boolean enqueue(String buildId) {
+        synchronized (pending) {
+            if (pending.contains(buildId)) {
+                registry.counter(className + ".merged.count").increment();
+                return false;
+            }
+            if (pending.size() >= maxSize) {
+                registry.counter(className + ".dropped.count").increment();
+                logger.warn("Archive queue is full, build {} is left to the scheduled archiving.", buildId);
+                return false;
+            }
+            pending.add(buildId);
+            return true;
+        }
+    }
+
+    public int size() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    @Scheduled(every = "{buildArchiver.queue.drainInterval}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void drain() {
+        List<String> batch;
+        while (!(batch = take()).isEmpty()) {
+            logger.info("Archiving {} notified builds.", batch.size());
+            List<Build> builds = new ArrayList<>(batch.size());
+            for (String buildId : batch) {
+                Build build = getBuild(buildId);
+                if (build != null) {
+                    builds.add(build);
+                }
+            }
+            buildArchiver.archiveInLanes(builds);
+        }
+    }
+
+    private List<String> take() {
+        synchronized (pending) {
+            List<String> batch = new ArrayList<>(Math.min(batchSize, pending.size()));
+            Iterator<String> iterator = pending.iterator();
+            while (iterator.hasNext() && batch.size() < batchSize) {
+                batch.add(iterator.next());
+                iterator.remove();
+            }
+            return batch;
+        }
+    }
+
+    private Build getBuild(String buildId) {
+        try {
+            Build build = buildClient.getSpecific(buildId);
+            if (build == null || build.getProgress() != BuildProgress.FINISHED) {
+                logger.info("Notified build {} is not finished, leaving it to the scheduled archiving.", buildId);
+                return null;
+            }
+            if (build.getAttributes() != null && build.getAttributes().containsKey(BUILD_ARCHIVED)) {
+                logger.debug("Notified build {} is already archived.", buildId);
+                return null;
+            }
+            return build;
+        } catch (RemoteResourceException e) {
+            logger.error("Cannot read notified build " + buildId + ", leaving it to the scheduled archiving.", e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.archiver;
+
+import io.quarkus.hibernate.orm.panache.PanacheEntityBase;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import jakarta.persistence.EmbeddedId;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Table;
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * Pre-aggregated number of archived builds per day and category. The rows are maintained by the archiver in the same
+ * transaction as the archived build record, see {@link ArchivedBuildStats}.
+ */
+@Table(name = "_archived_buildrecords_daily_stats")
+@Entity
+public class ArchivedBuildDailyStats extends PanacheEntityBase {
+
+    @EmbeddedId
+    Key key;
+
+    @Column(name = "build_count", nullable = false)
+    long buildCount;
+
+    /**
+     * Category of an archived build. Missing values are stored as empty strings, so they can be part of the primary
+     * key.
+     */
+    @Embeddable
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+
+        @Column(name = "submit_day")
+        LocalDate submitDay;
+
+        @Column(name = "status", length = 50)
+        String status;
+
+        @Column(name = "error_group", length = 10)
+        String errorGroup;
+
+        @Column(name = "error_msg")
+        String errorMessage;
+
+        @Column(name = "buildtype", length = 100)
+        String buildType;
+    }
+}
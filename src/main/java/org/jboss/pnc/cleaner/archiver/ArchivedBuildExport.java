@@ -0,0 +1,344 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.archiver;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Value;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.hibernate.Session;
+import org.hibernate.query.NativeQuery;
+import org.hibernate.type.BasicTypeReference;
+import org.hibernate.type.StandardBasicTypes;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.transaction.Transactional;
+import jakarta.ws.rs.BadRequestException;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bulk export of the archived build records. The records are read in keyset-bounded chunks, each by its own short
+ * transaction, and written row by row to the output, so the memory used does not depend on the number of exported
+ * records and no transaction or snapshot is held open while the output is written. A long export can't hit the
+ * transaction timeout and doesn't hold back vacuum.
+ * <p>
+ * Records are exported in the order of <code>(archived_time, buildrecord_id)</code>. The position of the last exported
+ * record can be passed to the next export to get only the records archived (or re-archived) since then. The archived
+ * time is stamped before the archiving transaction commits, so a record stamped earlier can become visible after a
+ * later one. Only records archived more than the safety lag ago are exported, so the returned position never passes
+ * a record whose transaction might still be running.
+ */
+@ApplicationScoped
+public class ArchivedBuildExport {
+
+    public enum Format {
+        NDJSON("application/x-ndjson", ".ndjson"), CSV("text/csv", ".csv");
+
+        private final String mediaType;
+
+        private final String fileExtension;
+
+        Format(String mediaType, String fileExtension) {
+            this.mediaType = mediaType;
+            this.fileExtension = fileExtension;
+        }
+
+        public String getMediaType() {
+            return mediaType;
+        }
+
+        public String getFileExtension() {
+            return fileExtension;
+        }
+    }
+
+    private static final String className = ArchivedBuildExport.class.getName();
+
+    private static final Map<String, BasicTypeReference<?>> COLUMNS = new LinkedHashMap<>();
+
+    private static final Map<String, BasicTypeReference<?>> LOG_COLUMNS = new LinkedHashMap<>();
+
+    /** Columns whose values are JSON documents, written as nested objects to NDJSON. */
+    private static final Set<String> JSON_COLUMNS = Set.of("attributes");
+
+    static {
+        COLUMNS.put("buildrecord_id", StandardBasicTypes.LONG);
+        COLUMNS.put("archived_time", StandardBasicTypes.INSTANT);
+        COLUMNS.put("buildcontentid", StandardBasicTypes.STRING);
+        COLUMNS.put("submittime", StandardBasicTypes.INSTANT);
+        COLUMNS.put("starttime", StandardBasicTypes.INSTANT);
+        COLUMNS.put("endtime", StandardBasicTypes.INSTANT);
+        COLUMNS.put("lastupdatetime", StandardBasicTypes.INSTANT);
+        COLUMNS.put("status", StandardBasicTypes.STRING);
+        COLUMNS.put("buildtype", StandardBasicTypes.STRING);
+        COLUMNS.put("executionrootname", StandardBasicTypes.STRING);
+        COLUMNS.put("executionrootversion", StandardBasicTypes.STRING);
+        COLUMNS.put("user_id", StandardBasicTypes.LONG);
+        COLUMNS.put("username", StandardBasicTypes.STRING);
+        COLUMNS.put("temporarybuild", StandardBasicTypes.BOOLEAN);
+        COLUMNS.put("autoalign", StandardBasicTypes.BOOLEAN);
+        COLUMNS.put("brewpullactive", StandardBasicTypes.BOOLEAN);
+        COLUMNS.put("categorized_error_group", StandardBasicTypes.STRING);
+        COLUMNS.put("categorized_error_msg", StandardBasicTypes.STRING);
+        COLUMNS.put("buildconfiguration_id", StandardBasicTypes.LONG);
+        COLUMNS.put("buildconfiguration_rev", StandardBasicTypes.INTEGER);
+        COLUMNS.put("buildconfiguration_name", StandardBasicTypes.STRING);
+        COLUMNS.put("buildenvironment_id", StandardBasicTypes.LONG);
+        COLUMNS.put("project_id", StandardBasicTypes.LONG);
+        COLUMNS.put("project_name", StandardBasicTypes.STRING);
+        COLUMNS.put("buildconfigsetrecord_id", StandardBasicTypes.LONG);
+        COLUMNS.put("product_id", StandardBasicTypes.LONG);
+        COLUMNS.put("product_name", StandardBasicTypes.STRING);
+        COLUMNS.put("productversion_id", StandardBasicTypes.LONG);
+        COLUMNS.put("product_version", StandardBasicTypes.STRING);
+        COLUMNS.put("productmilestone_id", StandardBasicTypes.LONG);
+        COLUMNS.put("productmilestone_version", StandardBasicTypes.STRING);
+        COLUMNS.put("attributes", StandardBasicTypes.STRING);
+
+        LOG_COLUMNS.put("trimmed_buildlog", StandardBasicTypes.STRING);
+        LOG_COLUMNS.put("trimmed_repourlog", StandardBasicTypes.STRING);
+    }
+
+    /** Number of records read by one transaction and held in memory, lower it for exports including the logs. */
+    @ConfigProperty(name = "archivedBuildExport.chunkSize", defaultValue = "500")
+    int chunkSize;
+
+    /**
+     * Age in seconds a record needs to have to be exported. It has to exceed the longest archiving transaction and the
+     * clock skew between the service instances.
+     */
+    @ConfigProperty(name = "archivedBuildExport.safetyLag", defaultValue = "600")
+    long safetyLag;
+
+    @Inject
+    EntityManager entityManager;
+
+    @Inject
+    MeterRegistry registry;
+
+    @Inject
+    ArchivedBuildExport self;
+
+    /**
+     * Writes the archived builds matching the filter to the output.
+     *
+     * @param format output format
+     * @param filter filter to apply, cannot be <code>null</code>
+     * @param after position of the last record of the previous export or <code>null</code> to export all records
+     * @param includeLogs whether the trimmed logs should be exported too
+     * @param output stream to write to, it is flushed but not closed
+     * @return position of the last exported record or <code>after</code> if no record was exported
+     */
+    public Position export(
+            Format format,
+            ArchivedBuildsFilter filter,
+            Position after,
+            boolean includeLogs,
+            OutputStream output) throws IOException {
+        Map<String, BasicTypeReference<?>> columns = new LinkedHashMap<>(COLUMNS);
+        if (includeLogs) {
+            columns.putAll(LOG_COLUMNS);
+        }
+        // the same bound for all the chunks, so the export is consistent with the returned position
+        Instant safeTime = Instant.now().minusSeconds(safetyLag);
+
+        List<String> names = new ArrayList<>(columns.keySet());
+        RowWriter writer = format == Format.CSV ? new CsvRowWriter(output) : new NdjsonRowWriter(output);
+        Position last = after;
+        long count = 0;
+        try {
+            writer.start(names);
+            List<Object[]> rows;
+            do {
+                rows = self.readChunk(columns, filter, safeTime, last);
+                for (Object[] row : rows) {
+                    writer.write(names, row);
+                    last = new Position((Instant) row[1], (Long) row[0]);
+                    count++;
+                }
+            } while (rows.size() >= chunkSize);
+            writer.finish();
+        } finally {
+            registry.counter(className + ".rows.count").increment(count);
+        }
+        return last;
+    }
+
+    /**
+     * Reads the next chunk of records after the position in the export order.
+     */
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    List<Object[]> readChunk(
+            Map<String, BasicTypeReference<?>> columns,
+            ArchivedBuildsFilter filter,
+            Instant safeTime,
+            Position after) {
+        Map<String, Object> parameters = new HashMap<>();
+        StringBuilder sql = new StringBuilder("SELECT ");
+        sql.append(String.join(", ", columns.keySet().stream().map(ArchivedDimensions::select).toList()));
+        sql.append(" FROM _archived_buildrecords r").append(ArchivedDimensions.JOINS).append(" WHERE 1 = 1");
+        ArchivedBuildQuery.appendFilter(sql, parameters, filter);
+        sql.append(" AND r.archived_time <= :safeTime");
+        parameters.put("safeTime", safeTime);
+        if (after != null) {
+            sql.append(" AND (r.archived_time, r.buildrecord_id) > (:afterTime, :afterId)");
+            parameters.put("afterTime", after.getArchivedTime());
+            parameters.put("afterId", after.getBuildRecordId());
+        }
+        sql.append(" ORDER BY r.archived_time, r.buildrecord_id LIMIT :limit");
+        parameters.put("limit", chunkSize);
+
+        @SuppressWarnings("unchecked")
+        NativeQuery<Object[]> query = entityManager.unwrap(Session.class).createNativeQuery(sql.toString());
+        parameters.forEach(query::setParameter);
+        columns.forEach(query::addScalar);
+        query.setReadOnly(true);
+        return query.getResultList();
+    }
+
+    /**
+     * Position of a record in the export order.
+     */
+    @Value
+    public static class Position {
+        Instant archivedTime;
+        long buildRecordId;
+
+        /**
+         * @param position position in format <code>ARCHIVED_TIME,BUILDRECORD_ID</code>, e.g.
+         *        <code>2024-01-01T00:00:00Z,1234</code>
+         */
+        public static Position parse(String position) {
+            try {
+                int separator = position.indexOf(',');
+                return new Position(
+                        Instant.parse(position.substring(0, separator)),
+                        Long.parseLong(position.substring(separator + 1)));
+            } catch (RuntimeException e) {
+                throw new BadRequestException("Invalid export position: " + position, e);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return archivedTime + "," + buildRecordId;
+        }
+    }
+
+    private interface RowWriter {
+        void start(List<String> columns) throws IOException;
+
+        void write(List<String> columns, Object[] row) throws IOException;
+
+        void finish() throws IOException;
+    }
+
+    private static class NdjsonRowWriter implements RowWriter {
+        private static final JsonFactory jsonFactory = new JsonFactory();
+
+        private final JsonGenerator generator;
+
+        NdjsonRowWriter(OutputStream output) throws IOException {
+            generator = jsonFactory.createGenerator(output).disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+        }
+
+        @Override
+        public void start(List<String> columns) {
+        }
+
+        @Override
+        public void write(List<String> columns, Object[] row) throws IOException {
+            generator.writeStartObject();
+            for (int i = 0; i < row.length; i++) {
+                Object value = row[i] instanceof Instant ? row[i].toString() : row[i];
+                generator.writeFieldName(columns.get(i));
+                if (value != null && JSON_COLUMNS.contains(columns.get(i))) {
+                    generator.writeRawValue((String) value);
+                } else {
+                    generator.writeObject(value);
+                }
+            }
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+
+        @Override
+        public void finish() throws IOException {
+            generator.close();
+        }
+    }
+
+    private static class CsvRowWriter implements RowWriter {
+        private final Writer writer;
+
+        CsvRowWriter(OutputStream output) {
+            writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void start(List<String> columns) throws IOException {
+            writeLine(columns.toArray());
+        }
+
+        @Override
+        public void write(List<String> columns, Object[] row) throws IOException {
+            writeLine(row);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            writer.flush();
+        }
+
+        private void writeLine(Object[] values) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                if (values[i] != null) {
+                    writer.write(escape(values[i].toString()));
+                }
+            }
+            writer.write("\r\n");
+        }
+
+        private static String escape(String value) {
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0
+                    && value.indexOf('\r') < 0) {
+                return value;
+            }
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.archiver;
+
+import io.micrometer.core.annotation.Timed;
+import io.quarkus.scheduler.Scheduled;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.transaction.Transactional;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Nightly incremental export of the archived builds into files in a local directory, for loading into the data
+ * warehouse. Every run writes the records archived since the previous run into a new file and remembers the position
+ * of the last exported record in the database. The file is written under a temporary name and renamed when complete,
+ * so consumers never see partial files.
+ */
+@ApplicationScoped
+public class ArchivedBuildFileExport {
+
+    static final String CURSOR_NAME = "file-export";
+
+    private static final DateTimeFormatter FILE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'")
+            .withZone(ZoneOffset.UTC);
+
+    private final Logger logger = LoggerFactory.getLogger(ArchivedBuildFileExport.class);
+
+    @ConfigProperty(name = "archivedBuildExport.directory")
+    Optional<String> directory;
+
+    @ConfigProperty(name = "archivedBuildExport.format", defaultValue = "NDJSON")
+    ArchivedBuildExport.Format format;
+
+    @ConfigProperty(name = "archivedBuildExport.includeLogs", defaultValue = "false")
+    boolean includeLogs;
+
+    @Inject
+    ArchivedBuildExport archivedBuildExport;
+
+    @Inject
+    ArchivedBuildFileExport self;
+
+    @Scheduled(cron = "{archivedBuildExport.cron}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void exportRegularly() throws IOException {
+        if (directory.isEmpty()) {
+            logger.warn("Archived build export is scheduled, but archivedBuildExport.directory is not set.");
+            return;
+        }
+        exportNewRecords(Path.of(directory.get()));
+    }
+
+    /**
+     * Exports the records archived since the last export into a new file in the directory.
+     *
+     * @return the written file or <code>null</code> if there was nothing new to export
+     */
+    @Timed
+    public Path exportNewRecords(Path directory) throws IOException {
+        ArchivedBuildExport.Position after = self.getPosition();
+        logger.info("Exporting archived builds after {} to {}.", after, directory);
+
+        Files.createDirectories(directory);
+        Path partFile = Files.createTempFile(directory, "archived-builds-", ".part");
+        ArchivedBuildExport.Position last;
+        try (OutputStream output = new BufferedOutputStream(Files.newOutputStream(partFile))) {
+            last = archivedBuildExport.export(format, new ArchivedBuildsFilter(), after, includeLogs, output);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(partFile);
+            throw e;
+        }
+
+        if (last == null || Objects.equals(last, after)) {
+            logger.info("No new archived builds to export.");
+            Files.delete(partFile);
+            return null;
+        }
+        Path file = directory
+                .resolve("archived-builds-" + FILE_TIMESTAMP.format(Instant.now()) + format.getFileExtension());
+        Files.move(partFile, file, StandardCopyOption.ATOMIC_MOVE);
+        self.savePosition(last);
+        logger.info("Exported archived builds up to {} to {}.", last, file);
+        return file;
+    }
+
+    @Transactional
+    public ArchivedBuildExport.Position getPosition() {
+        ArchivedBuildExportCursor cursor = ArchivedBuildExportCursor.findById(CURSOR_NAME);
+        return cursor == null ? null : new ArchivedBuildExport.Position(cursor.archivedTime, cursor.buildRecordId);
+    }
+
+    @Transactional
+    public void savePosition(ArchivedBuildExport.Position position) {
+        ArchivedBuildExportCursor cursor = ArchivedBuildExportCursor.findById(CURSOR_NAME);
+        if (cursor == null) {
+            cursor = new ArchivedBuildExportCursor();
+            cursor.name = CURSOR_NAME;
+        }
+        cursor.archivedTime = position.getArchivedTime();
+        cursor.buildRecordId = position.getBuildRecordId();
+        cursor.persist();
+    }
+}
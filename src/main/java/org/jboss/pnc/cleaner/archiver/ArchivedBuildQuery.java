@@ -0,0 +1,243 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.archiver;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.annotation.Timed;
+import lombok.Value;
+import org.hibernate.query.NativeQuery;
+import org.hibernate.type.StandardBasicTypes;
+import org.jboss.pnc.common.pnc.LongBase32IdConverter;
+import org.jboss.pnc.enums.BuildStatus;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import jakarta.ws.rs.BadRequestException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Read access to the archived build records. Pages are selected with keyset (seek) pagination on
+ * <code>(submittime, buildrecord_id)</code> in descending order, so the cost of a page does not depend on how deep into
+ * the history the client is. Records without a submit time, left by old versions of the archiver, have no place in
+ * that order and are not listed. Only the columns needed for {@link ArchivedBuildSummary} are selected, the trimmed
+ * logs are never read.
+ */
+@ApplicationScoped
+public class ArchivedBuildQuery {
+
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static final String SUMMARY_COLUMNS = "r.buildrecord_id, r.buildcontentid, r.submittime, r.starttime, "
+            + "r.endtime, r.status, r.buildtype, r.temporarybuild, r.categorized_error_group, "
+            + "r.categorized_error_msg, r.buildconfiguration_id, "
+            + ArchivedDimensions.select("buildconfiguration_name") + ", r.project_id, "
+            + ArchivedDimensions.select("project_name") + ", " + ArchivedDimensions.select("username");
+
+    @Inject
+    EntityManager entityManager;
+
+    /**
+     * Finds one page of archived builds matching the filter.
+     *
+     * @param filter filter to apply, cannot be <code>null</code>
+     * @param cursor cursor returned with the previous page or <code>null</code> for the first page
+     * @param pageSize maximal number of returned builds
+     * @return the page, never <code>null</code>
+     */
+    @Timed
+    public ArchivedBuildsPage<ArchivedBuildSummary> find(ArchivedBuildsFilter filter, String cursor, int pageSize) {
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new BadRequestException("Page size has to be between 1 and " + MAX_PAGE_SIZE);
+        }
+
+        SqlQuery listing = listingQuery(filter, cursor, pageSize);
+        Query query = entityManager.createNativeQuery(listing.getSql());
+        listing.getParameters().forEach(query::setParameter);
+        addSummaryScalars(query.unwrap(NativeQuery.class));
+
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = query.getResultList();
+
+        List<ArchivedBuildSummary> content = new ArrayList<>(Math.min(rows.size(), pageSize));
+        for (int i = 0; i < rows.size() && i < pageSize; i++) {
+            content.add(toSummary(rows.get(i)));
+        }
+
+        String nextCursor = null;
+        if (rows.size() > pageSize) {
+            Object[] last = rows.get(pageSize - 1);
+            nextCursor = new Cursor((Instant) last[2], (Long) last[0]).encode();
+        }
+        return new ArchivedBuildsPage<>(content, nextCursor);
+    }
+
+    /**
+     * Creates the SQL of one page of the listing.
+     */
+    static SqlQuery listingQuery(ArchivedBuildsFilter filter, String cursor, int pageSize) {
+        Map<String, Object> parameters = new HashMap<>();
+        StringBuilder sql = new StringBuilder("SELECT ").append(SUMMARY_COLUMNS)
+                .append(" FROM _archived_buildrecords r")
+                .append(ArchivedDimensions.JOINS)
+                .append(" WHERE r.submittime IS NOT NULL");
+        appendFilter(sql, parameters, filter);
+        if (cursor != null && !cursor.isBlank()) {
+            Cursor position = Cursor.decode(cursor);
+            sql.append(" AND (r.submittime, r.buildrecord_id) < (:cursorTime, :cursorId)");
+            parameters.put("cursorTime", position.submitTime);
+            parameters.put("cursorId", position.buildRecordId);
+        }
+        sql.append(" ORDER BY r.submittime DESC, r.buildrecord_id DESC LIMIT :limit");
+        // one more row tells us if there is a next page
+        parameters.put("limit", pageSize + 1);
+        return new SqlQuery(sql.toString(), parameters);
+    }
+
+    static void appendFilter(StringBuilder sql, Map<String, Object> parameters, ArchivedBuildsFilter filter) {
+        if (filter.getStatus() != null) {
+            sql.append(" AND r.status = :status");
+            parameters.put("status", filter.getStatus().name());
+        }
+        if (filter.getErrorGroup() != null) {
+            sql.append(" AND r.categorized_error_group = :errorGroup");
+            parameters.put("errorGroup", filter.getErrorGroup().name());
+        }
+        if (filter.getProjectId() != null) {
+            sql.append(" AND r.project_id = :projectId");
+            parameters.put("projectId", filter.getProjectId());
+        }
+        if (filter.getBuildConfigId() != null) {
+            sql.append(" AND r.buildconfiguration_id = :buildConfigId");
+            parameters.put("buildConfigId", filter.getBuildConfigId());
+        }
+        Map<String, String> attributes = filter.getAttributeMap();
+        if (!attributes.isEmpty()) {
+            // containment is served by the jsonb_path_ops GIN index
+            sql.append(" AND r.attributes @> CAST(:attributes AS jsonb)");
+            parameters.put("attributes", toJson(attributes));
+        }
+        Instant from = filter.getFromInstant();
+        if (from != null) {
+            sql.append(" AND r.submittime >= :from");
+            parameters.put("from", from);
+        }
+        Instant to = filter.getToInstant();
+        if (to != null) {
+            sql.append(" AND r.submittime < :to");
+            parameters.put("to", to);
+        }
+    }
+
+    private static String toJson(Map<String, String> attributes) {
+        try {
+            return objectMapper.writeValueAsString(attributes);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize attributes " + attributes, e);
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static void addSummaryScalars(NativeQuery query) {
+        query.addScalar("buildrecord_id", StandardBasicTypes.LONG)
+                .addScalar("buildcontentid", StandardBasicTypes.STRING)
+                .addScalar("submittime", StandardBasicTypes.INSTANT)
+                .addScalar("starttime", StandardBasicTypes.INSTANT)
+                .addScalar("endtime", StandardBasicTypes.INSTANT)
+                .addScalar("status", StandardBasicTypes.STRING)
+                .addScalar("buildtype", StandardBasicTypes.STRING)
+                .addScalar("temporarybuild", StandardBasicTypes.BOOLEAN)
+                .addScalar("categorized_error_group", StandardBasicTypes.STRING)
+                .addScalar("categorized_error_msg", StandardBasicTypes.STRING)
+                .addScalar("buildconfiguration_id", StandardBasicTypes.LONG)
+                .addScalar("buildconfiguration_name", StandardBasicTypes.STRING)
+                .addScalar("project_id", StandardBasicTypes.LONG)
+                .addScalar("project_name", StandardBasicTypes.STRING)
+                .addScalar("username", StandardBasicTypes.STRING);
+    }
+
+    private static ArchivedBuildSummary toSummary(Object[] row) {
+        return ArchivedBuildSummary.builder()
+                .id(LongBase32IdConverter.toString((Long) row[0]))
+                .buildContentId((String) row[1])
+                .submitTime((Instant) row[2])
+                .startTime((Instant) row[3])
+                .endTime((Instant) row[4])
+                .status(row[5] == null ? null : BuildStatus.valueOf((String) row[5]))
+                .buildType((String) row[6])
+                .temporaryBuild((Boolean) row[7])
+                .errorGroup(row[8] == null ? null : ArchivedBuildRecord.ErrorGroup.valueOf((String) row[8]))
+                .errorMessage((String) row[9])
+                .buildConfigId((Long) row[10])
+                .buildConfigName((String) row[11])
+                .projectId((Long) row[12])
+                .projectName((String) row[13])
+                .username((String) row[14])
+                .build();
+    }
+
+    /**
+     * Native SQL with the values of its named parameters.
+     */
+    @Value
+    static class SqlQuery {
+        String sql;
+        Map<String, Object> parameters;
+    }
+
+    /**
+     * Position of the last returned row, serialized as an opaque URL safe string.
+     */
+    static class Cursor {
+        final Instant submitTime;
+        final long buildRecordId;
+
+        Cursor(Instant submitTime, long buildRecordId) {
+            this.submitTime = Objects.requireNonNull(submitTime, "Listed records have a submit time");
+            this.buildRecordId = buildRecordId;
+        }
+
+        String encode() {
+            String plain = submitTime.toString() + "," + buildRecordId;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(plain.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Cursor decode(String cursor) {
+            try {
+                String plain = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separator = plain.indexOf(',');
+                return new Cursor(
+                        Instant.parse(plain.substring(0, separator)),
+                        Long.parseLong(plain.substring(separator + 1)));
+            } catch (RuntimeException e) {
+                throw new BadRequestException("Invalid cursor: " + cursor, e);
+            }
+        }
+    }
+}
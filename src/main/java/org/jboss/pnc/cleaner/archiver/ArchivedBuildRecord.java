@@ -18,7 +18,9 @@
 package org.jboss.pnc.cleaner.archiver;
 
 import io.quarkus.hibernate.orm.panache.PanacheEntityBase;
+import org.hibernate.annotations.JdbcTypeCode;
 import org.hibernate.annotations.Type;
+import org.hibernate.type.SqlTypes;
 import org.jboss.pnc.enums.BuildStatus;
 
 import jakarta.persistence.Basic;
@@ -28,9 +30,9 @@ import jakarta.persistence.EnumType;
 import jakarta.persistence.Enumerated;
 import jakarta.persistence.FetchType;
 import jakarta.persistence.Id;
-import jakarta.persistence.Lob;
 import jakarta.persistence.Table;
 import java.time.Instant;
+import java.util.Map;
 
 @Table(name = "_archived_buildrecords")
 @Entity
@@ -138,17 +140,47 @@ public class ArchivedBuildRecord extends PanacheEntityBase {
     @Column(name = "buildcontentid", length = 50)
     String buildcontentID;
 
+    // ids of ArchivedDimensionValue used instead of the repeated strings in the STAR storage mode
+    @Column(name = "project_name_dim")
+    Long projectNameDim;
+
+    @Column(name = "buildconfiguration_name_dim")
+    Long buildConfigNameDim;
+
+    @Column(name = "username_dim")
+    Long usernameDim;
+
+    @Column(name = "product_name_dim")
+    Long productNameDim;
+
+    @Column(name = "product_version_dim")
+    Long productVersionDim;
+
+    @Column(name = "executionrootname_dim")
+    Long executionRootNameDim;
+
+    // stored as text (not as a large object) so the logs can be searched with the trigram index,
+    // NULL when there is no trimmed log
     @Column(name = "trimmed_buildlog")
-    @Lob
+    @JdbcTypeCode(SqlTypes.LONG32VARCHAR)
     @Basic(fetch = FetchType.LAZY)
     String trimmedBuildLog;
 
     @Column(name = "trimmed_repourlog")
-    @Lob
+    @JdbcTypeCode(SqlTypes.LONG32VARCHAR)
     @Basic(fetch = FetchType.LAZY)
     String trimmedAlignLog;
 
     @Column(name = "lastupdatetime")
     Instant lastUpdate;
 
+    // all attributes of the build, searchable with the GIN index
+    @Column(name = "attributes", columnDefinition = "jsonb")
+    @JdbcTypeCode(SqlTypes.JSON)
+    Map<String, String> attributes;
+
+    // time when the record was last written by the archiver, used by incremental exports
+    @Column(name = "archived_time", nullable = false)
+    Instant archivedTime;
+
 }
@@ -0,0 +1,149 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.archiver;
+
+import io.micrometer.core.annotation.Timed;
+import org.hibernate.query.NativeQuery;
+import org.hibernate.type.StandardBasicTypes;
+import org.jboss.pnc.common.pnc.LongBase32IdConverter;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import jakarta.ws.rs.BadRequestException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Case-insensitive substring search over the archived trimmed logs. The lookups are served by trigram GIN indexes on
+ * the log columns (see <code>db/migration</code>), which PostgreSQL maintains on every write of the archiver. Results
+ * are ordered by build id descending and paginated by seeking on the id.
+ */
+@ApplicationScoped
+public class ArchivedBuildSearch {
+
+    public enum SearchedLog {
+        BUILD("trimmed_buildlog"), ALIGNMENT("trimmed_repourlog");
+
+        private final String column;
+
+        SearchedLog(String column) {
+            this.column = column;
+        }
+    }
+
+    /** Trigram index can't be used for shorter patterns. */
+    public static final int MIN_TEXT_LENGTH = 3;
+
+    /** Number of characters of the log included in the snippet on each side of the match. */
+    private static final int SNIPPET_CONTEXT = 100;
+
+    @Inject
+    EntityManager entityManager;
+
+    /**
+     * Finds archived builds which contain the given text in the searched log.
+     *
+     * @param text the searched text, matched literally and case-insensitively
+     * @param log which of the logs should be searched
+     * @param filter additional filter on the archived builds, cannot be <code>null</code>
+     * @param cursor cursor returned with the previous page or <code>null</code> for the first page
+     * @param pageSize maximal number of returned builds
+     * @return the page of matching builds, never <code>null</code>
+     */
+    @Timed
+    public ArchivedBuildsPage<ArchivedBuildSearchHit> search(
+            String text,
+            SearchedLog log,
+            ArchivedBuildsFilter filter,
+            String cursor,
+            int pageSize) {
+        if (text == null || text.length() < MIN_TEXT_LENGTH) {
+            throw new BadRequestException("Searched text has to have at least " + MIN_TEXT_LENGTH + " characters");
+        }
+        if (pageSize < 1 || pageSize > ArchivedBuildQuery.MAX_PAGE_SIZE) {
+            throw new BadRequestException("Page size has to be between 1 and " + ArchivedBuildQuery.MAX_PAGE_SIZE);
+        }
+
+        ArchivedBuildQuery.SqlQuery search = searchQuery(text, log, filter, cursor, pageSize);
+        Query query = entityManager.createNativeQuery(search.getSql());
+        search.getParameters().forEach(query::setParameter);
+        query.unwrap(NativeQuery.class)
+                .addScalar("buildrecord_id", StandardBasicTypes.LONG)
+                .addScalar("snippet", StandardBasicTypes.STRING);
+
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = query.getResultList();
+
+        List<ArchivedBuildSearchHit> hits = new ArrayList<>(Math.min(rows.size(), pageSize));
+        for (int i = 0; i < rows.size() && i < pageSize; i++) {
+            Object[] row = rows.get(i);
+            hits.add(new ArchivedBuildSearchHit(LongBase32IdConverter.toString((Long) row[0]), (String) row[1]));
+        }
+        String nextCursor = rows.size() > pageSize ? hits.get(pageSize - 1).getId() : null;
+        return new ArchivedBuildsPage<>(hits, nextCursor);
+    }
+
+    /**
+     * Creates the SQL of one page of the search.
+     */
+    static ArchivedBuildQuery.SqlQuery searchQuery(
+            String text,
+            SearchedLog log,
+            ArchivedBuildsFilter filter,
+            String cursor,
+            int pageSize) {
+        Map<String, Object> parameters = new HashMap<>();
+        StringBuilder matching = new StringBuilder("SELECT r.buildrecord_id FROM _archived_buildrecords r WHERE r.")
+                .append(log.column)
+                .append(" ILIKE :pattern");
+        parameters.put("pattern", "%" + escapeLike(text) + "%");
+        ArchivedBuildQuery.appendFilter(matching, parameters, filter);
+        if (cursor != null && !cursor.isBlank()) {
+            matching.append(" AND r.buildrecord_id < :cursorId");
+            parameters.put("cursorId", decodeCursor(cursor));
+        }
+        matching.append(" ORDER BY r.buildrecord_id DESC LIMIT :limit");
+        parameters.put("limit", pageSize + 1);
+
+        // the snippet is computed in the outer query, so it is evaluated only for the returned page
+        String sql = "SELECT m.buildrecord_id, substring(a." + log.column
+                + " from greatest(strpos(lower(a." + log.column + "), lower(:text)) - :context, 1)"
+                + " for (length(:text) + 2 * :context)) AS snippet"
+                + " FROM (" + matching + ") m JOIN _archived_buildrecords a ON a.buildrecord_id = m.buildrecord_id"
+                + " ORDER BY m.buildrecord_id DESC";
+        parameters.put("text", text);
+        parameters.put("context", SNIPPET_CONTEXT);
+        return new ArchivedBuildQuery.SqlQuery(sql, parameters);
+    }
+
+    private static long decodeCursor(String cursor) {
+        try {
+            return LongBase32IdConverter.toLong(cursor);
+        } catch (RuntimeException e) {
+            throw new BadRequestException("Invalid cursor: " + cursor, e);
+        }
+    }
+
+    private static String escapeLike(String text) {
+        return text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
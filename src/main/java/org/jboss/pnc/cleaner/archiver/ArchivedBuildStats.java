@@ -0,0 +1,166 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.archiver;
+
+import io.micrometer.core.annotation.Timed;
+import org.hibernate.query.NativeQuery;
+import org.hibernate.type.StandardBasicTypes;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import jakarta.transaction.Transactional;
+import jakarta.ws.rs.BadRequestException;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Maintains and reads the daily rollups of archived builds in {@link ArchivedBuildDailyStats}. Each archived build is
+ * counted once, in the day of its submit time. When a build is archived again and its category changes, the old
+ * category is decremented and the new one incremented. The rollups of an archive created before they existed are
+ * filled by the V9 migration.
+ */
+@ApplicationScoped
+public class ArchivedBuildStats {
+
+    public enum Granularity {
+        DAY, MONTH, QUARTER, YEAR
+    }
+
+    private static final String UPSERT = "INSERT INTO _archived_buildrecords_daily_stats"
+            + " (submit_day, status, error_group, error_msg, buildtype, build_count)"
+            + " VALUES (:submitDay, :status, :errorGroup, :errorMessage, :buildType, :delta)"
+            + " ON CONFLICT (submit_day, status, error_group, error_msg, buildtype)"
+            + " DO UPDATE SET build_count = _archived_buildrecords_daily_stats.build_count + EXCLUDED.build_count";
+
+    private static final Comparator<ArchivedBuildDailyStats.Key> KEY_ORDER = Comparator
+            .comparing(ArchivedBuildDailyStats.Key::getSubmitDay)
+            .thenComparing(ArchivedBuildDailyStats.Key::getStatus)
+            .thenComparing(ArchivedBuildDailyStats.Key::getErrorGroup)
+            .thenComparing(ArchivedBuildDailyStats.Key::getErrorMessage)
+            .thenComparing(ArchivedBuildDailyStats.Key::getBuildType);
+
+    @Inject
+    EntityManager entityManager;
+
+    /**
+     * Computes the rollup category of an archived build.
+     *
+     * @param record the archived build
+     * @return the category key or <code>null</code> if the build has no submit time and is not counted
+     */
+    public static ArchivedBuildDailyStats.Key keyOf(ArchivedBuildRecord record) {
+        if (record.submitTime == null) {
+            return null;
+        }
+        return new ArchivedBuildDailyStats.Key(
+                record.submitTime.atZone(ZoneOffset.UTC).toLocalDate(),
+                record.status == null ? "" : record.status.name(),
+                record.categorizedErrorGroup == null ? "" : record.categorizedErrorGroup.name(),
+                Objects.toString(record.categorizedErrorMessage, ""),
+                Objects.toString(record.buildType, ""));
+    }
+
+    /**
+     * Moves one archived build from the previous category to the current one. Has to be called in the transaction
+     * which stores the archived build record.
+     *
+     * @param previous category of the previously archived version of the build or <code>null</code> if the build was
+     *        not archived before or not counted
+     * @param current category of the archived build
+     */
+    @Transactional(Transactional.TxType.MANDATORY)
+    public void update(ArchivedBuildDailyStats.Key previous, ArchivedBuildDailyStats.Key current) {
+        if (current.equals(previous)) {
+            return;
+        }
+        // rows are always locked in the same order, so concurrent archivings moving builds between the same two
+        // categories in opposite directions can't deadlock
+        if (previous != null && KEY_ORDER.compare(previous, current) < 0) {
+            upsert(previous, -1);
+            upsert(current, 1);
+        } else {
+            upsert(current, 1);
+            if (previous != null) {
+                upsert(previous, -1);
+            }
+        }
+    }
+
+    private void upsert(ArchivedBuildDailyStats.Key key, long delta) {
+        entityManager.createNativeQuery(UPSERT)
+                .setParameter("submitDay", key.getSubmitDay())
+                .setParameter("status", key.getStatus())
+                .setParameter("errorGroup", key.getErrorGroup())
+                .setParameter("errorMessage", key.getErrorMessage())
+                .setParameter("buildType", key.getBuildType())
+                .setParameter("delta", delta)
+                .executeUpdate();
+    }
+
+    /**
+     * Reads the number of archived builds per category aggregated to the requested granularity.
+     *
+     * @param from first day included in the stats
+     * @param to first day not included in the stats
+     * @param granularity length of the aggregated period
+     * @return stats ordered by period and category, never <code>null</code>
+     */
+    @Timed
+    public List<ArchivedBuildStatsRow> find(LocalDate from, LocalDate to, Granularity granularity) {
+        if (!from.isBefore(to)) {
+            throw new BadRequestException("Parameter from has to be before to");
+        }
+        Query query = entityManager.createNativeQuery(
+                "SELECT CAST(date_trunc(:unit, s.submit_day) AS date) AS period, s.status, s.error_group,"
+                        + " s.error_msg, s.buildtype, sum(s.build_count) AS builds"
+                        + " FROM _archived_buildrecords_daily_stats s"
+                        + " WHERE s.submit_day >= :from AND s.submit_day < :to"
+                        + " GROUP BY 1, 2, 3, 4, 5 HAVING sum(s.build_count) <> 0 ORDER BY 1, 2, 3, 4, 5")
+                .setParameter("unit", granularity.name().toLowerCase())
+                .setParameter("from", from)
+                .setParameter("to", to);
+        query.unwrap(NativeQuery.class)
+                .addScalar("period", StandardBasicTypes.LOCAL_DATE)
+                .addScalar("status", StandardBasicTypes.STRING)
+                .addScalar("error_group", StandardBasicTypes.STRING)
+                .addScalar("error_msg", StandardBasicTypes.STRING)
+                .addScalar("buildtype", StandardBasicTypes.STRING)
+                .addScalar("builds", StandardBasicTypes.LONG);
+
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = query.getResultList();
+        List<ArchivedBuildStatsRow> result = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            result.add(
+                    new ArchivedBuildStatsRow(
+                            (LocalDate) row[0],
+                            (String) row[1],
+                            (String) row[2],
+                            (String) row[3],
+                            (String) row[4],
+                            (Long) row[5]));
+        }
+        return result;
+    }
+}
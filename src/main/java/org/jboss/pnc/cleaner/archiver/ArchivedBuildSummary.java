@@ -0,0 +1,49 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.archiver;
+
+import lombok.Builder;
+import lombok.Value;
+import org.jboss.pnc.enums.BuildStatus;
+
+import java.time.Instant;
+
+/**
+ * Lightweight projection of {@link ArchivedBuildRecord} used by the query API. It intentionally does not contain the
+ * trimmed logs, so the LOB columns are never read when listing archived builds.
+ */
+@Value
+@Builder
+public class ArchivedBuildSummary {
+
+    String id;
+    String buildContentId;
+    Instant submitTime;
+    Instant startTime;
+    Instant endTime;
+    BuildStatus status;
+    String buildType;
+    Boolean temporaryBuild;
+    ArchivedBuildRecord.ErrorGroup errorGroup;
+    String errorMessage;
+    Long buildConfigId;
+    String buildConfigName;
+    Long projectId;
+    String projectName;
+    String username;
+}
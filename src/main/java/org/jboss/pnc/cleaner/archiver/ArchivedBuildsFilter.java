@@ -0,0 +1,106 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.archiver;
+
+import lombok.Data;
+import org.jboss.pnc.enums.BuildStatus;
+
+import jakarta.ws.rs.BadRequestException;
+import jakarta.ws.rs.QueryParam;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Filter parameters for querying archived builds. All parameters are optional, the time range is applied to the submit
+ * time of the build, <code>from</code> is inclusive and <code>to</code> is exclusive.
+ */
+@Data
+public class ArchivedBuildsFilter {
+
+    @QueryParam("status")
+    BuildStatus status;
+
+    @QueryParam("errorGroup")
+    ArchivedBuildRecord.ErrorGroup errorGroup;
+
+    @QueryParam("projectId")
+    Long projectId;
+
+    @QueryParam("buildConfigId")
+    Long buildConfigId;
+
+    /** ISO-8601 instant, e.g. 2024-04-16T00:00:00Z */
+    @QueryParam("from")
+    String from;
+
+    /** ISO-8601 instant, e.g. 2024-05-16T00:00:00Z */
+    @QueryParam("to")
+    String to;
+
+    /** Build attributes in format KEY:VALUE, a build has to have all of them. */
+    @QueryParam("attribute")
+    List<String> attributes;
+
+    /**
+     * Checks the values which are parsed only when the filter is applied.
+     *
+     * @throws BadRequestException when a value is invalid
+     */
+    public void validate() {
+        getFromInstant();
+        getToInstant();
+        getAttributeMap();
+    }
+
+    Instant getFromInstant() {
+        return parseInstant("from", from);
+    }
+
+    Instant getToInstant() {
+        return parseInstant("to", to);
+    }
+
+    Map<String, String> getAttributeMap() {
+        Map<String, String> result = new LinkedHashMap<>();
+        if (attributes == null) {
+            return result;
+        }
+        for (String attribute : attributes) {
+            int separator = attribute.indexOf(':');
+            if (separator < 1) {
+                throw new BadRequestException("Invalid value of parameter attribute, expected KEY:VALUE: " + attribute);
+            }
+            result.put(attribute.substring(0, separator), attribute.substring(separator + 1));
+        }
+        return result;
+    }
+
+    private static Instant parseInstant(String name, String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return Instant.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new BadRequestException("Invalid value of parameter " + name + ": " + value, e);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.archiver;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.transaction.Transactional;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Storage of the repeated strings of the archived build records. In the FLAT mode the strings are stored in the
+ * record. In the STAR mode each distinct string is stored once in {@link ArchivedDimensionValue} and the record holds
+ * only its id, which keeps the archive table and its indexes small. The ids are cached in memory, so resolving an
+ * already known string does not need a database round trip.
+ * <p>
+ * Readers use {@link #select(String)} and {@link #JOINS}, which return the value from whichever place it is stored in,
+ * so records written in both modes can be mixed in the table.
+ */
+@ApplicationScoped
+public class ArchivedDimensions {
+
+    public enum StorageMode {
+        FLAT, STAR
+    }
+
+    public enum Dimension {
+        PROJECT_NAME("project_name"),
+        BUILD_CONFIG_NAME("buildconfiguration_name"),
+        USERNAME("username"),
+        PRODUCT_NAME("product_name"),
+        PRODUCT_VERSION("product_version"),
+        EXECUTION_ROOT_NAME("executionrootname");
+
+        private final String column;
+
+        Dimension(String column) {
+            this.column = column;
+        }
+
+        public String getColumn() {
+            return column;
+        }
+
+        String getIdColumn() {
+            return column + "_dim";
+        }
+
+        String getAlias() {
+            return "d_" + column;
+        }
+    }
+
+    /**
+     * Left joins of the dimension values to the archived build records aliased as <code>r</code>.
+     */
+    static final String JOINS;
+
+    private static final String className = ArchivedDimensions.class.getName();
+
+    private static final String FIND_ID = "SELECT id FROM _archived_dimension_values"
+            + " WHERE dimension = :dimension AND value = :value";
+
+    private static final String INSERT_VALUE = "INSERT INTO _archived_dimension_values (dimension, value)"
+            + " VALUES (:dimension, :value) ON CONFLICT (dimension, value) DO NOTHING";
+
+    static {
+        StringBuilder joins = new StringBuilder();
+        for (Dimension dimension : Dimension.values()) {
+            joins.append(" LEFT JOIN _archived_dimension_values ")
+                    .append(dimension.getAlias())
+                    .append(" ON ")
+                    .append(dimension.getAlias())
+                    .append(".id = r.")
+                    .append(dimension.getIdColumn());
+        }
+        JOINS = joins.toString();
+    }
+
+    @ConfigProperty(name = "buildArchiver.storageMode", defaultValue = "FLAT")
+    StorageMode storageMode;
+
+    @Inject
+    EntityManager entityManager;
+
+    @Inject
+    MeterRegistry registry;
+
+    @Inject
+    ArchivedDimensions self;
+
+    private final Map<Dimension, Map<String, Long>> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the select expression of the column of the archived build records aliased as <code>r</code>, named as
+     * the column. Requires {@link #JOINS} for the dimension columns.
+     */
+    static String select(String column) {
+        for (Dimension dimension : Dimension.values()) {
+            if (dimension.getColumn().equals(column)) {
+                return "coalesce(r." + column + ", " + dimension.getAlias() + ".value) AS " + column;
+            }
+        }
+        return "r." + column;
+    }
+
+    /**
+     * Moves the repeated strings of the record to the place given by the storage mode.
+     */
+    public void store(ArchivedBuildRecord record) {
+        if (storageMode == StorageMode.FLAT) {
+            record.projectNameDim = null;
+            record.buildConfigNameDim = null;
+            record.usernameDim = null;
+            record.productNameDim = null;
+            record.productVersionDim = null;
+            record.executionRootNameDim = null;
+            return;
+        }
+        record.projectNameDim = idOf(Dimension.PROJECT_NAME, record.projectName);
+        record.buildConfigNameDim = idOf(Dimension.BUILD_CONFIG_NAME, record.buildConfigName);
+        record.usernameDim = idOf(Dimension.USERNAME, record.username);
+        record.productNameDim = idOf(Dimension.PRODUCT_NAME, record.productName);
+        record.productVersionDim = idOf(Dimension.PRODUCT_VERSION, record.productVersion);
+        record.executionRootNameDim = idOf(Dimension.EXECUTION_ROOT_NAME, record.executionRootName);
+        record.projectName = null;
+        record.buildConfigName = null;
+        record.username = null;
+        record.productName = null;
+        record.productVersion = null;
+        record.executionRootName = null;
+    }
+
+    /**
+     * Returns id of the dimension value, creating the value if it does not exist yet.
+     */
+    public Long idOf(Dimension dimension, String value) {
+        if (value == null) {
+            return null;
+        }
+        Map<String, Long> values = cache.computeIfAbsent(dimension, d -> new ConcurrentHashMap<>());
+        Long id = values.get(value);
+        if (id == null) {
+            registry.counter(className + ".cache.miss.count").increment();
+            id = self.findOrInsert(dimension, value);
+            values.put(value, id);
+        }
+        return id;
+    }
+
+    /**
+     * Inserts the value in its own transaction, so the id is committed before it is cached and used by other
+     * transactions.
+     */
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public Long findOrInsert(Dimension dimension, String value) {
+        Long id = findId(dimension, value);
+        if (id != null) {
+            return id;
+        }
+        entityManager.createNativeQuery(INSERT_VALUE)
+                .setParameter("dimension", dimension.name())
+                .setParameter("value", value)
+                .executeUpdate();
+        // when a concurrent transaction inserted the value first, it is visible to this new statement
+        return findId(dimension, value);
+    }
+
+    private Long findId(Dimension dimension, String value) {
+        List<?> ids = entityManager.createNativeQuery(FIND_ID, Long.class)
+                .setParameter("dimension", dimension.name())
+                .setParameter("value", value)
+                .getResultList();
+        return ids.isEmpty() ? null : (Long) ids.get(0);
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.archiver;
+
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.scheduler.Scheduled;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.hibernate.query.NativeQuery;
+import org.hibernate.type.StandardBasicTypes;
+import org.jboss.pnc.enums.BuildStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import jakarta.transaction.Transactional;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Drops the trimmed logs of old archived builds according to per-status retention policies, while the rest of the
+ * archived record is kept forever. The logs are purged in small batches, each in its own short transaction, with a
+ * pause between the batches, and the whole run is limited by a time budget, so the job never holds locks for long and
+ * leaves autovacuum time to keep up.
+ */
+@ApplicationScoped
+public class ArchivedLogRetention {
+
+    private static final String className = ArchivedLogRetention.class.getName();
+
+    private static final String PURGE_BATCH = "WITH batch AS ("
+            + " SELECT buildrecord_id, coalesce(pg_column_size(trimmed_buildlog), 0)"
+            + " + coalesce(pg_column_size(trimmed_repourlog), 0) AS bytes"
+            + " FROM _archived_buildrecords WHERE status = :status AND submittime < :threshold"
+            + " AND (trimmed_buildlog IS NOT NULL OR trimmed_repourlog IS NOT NULL)"
+            + " LIMIT :batchSize FOR UPDATE SKIP LOCKED),"
+            + " purged AS (UPDATE _archived_buildrecords r SET trimmed_buildlog = NULL, trimmed_repourlog = NULL"
+            + " FROM batch WHERE r.buildrecord_id = batch.buildrecord_id RETURNING batch.bytes)"
+            + " SELECT count(*) AS row_count, coalesce(sum(bytes), 0) AS byte_count FROM purged";
+
+    private final Logger logger = LoggerFactory.getLogger(ArchivedLogRetention.class);
+
+    /**
+     * Retention policies in format STATUS=DAYS, e.g. SUCCESS=90. Logs of archived builds with the status submitted
+     * more than DAYS ago are dropped. Builds with statuses without a policy keep their logs forever.
+     */
+    @ConfigProperty(name = "archivedLogRetention.policies")
+    Optional<List<String>> policies;
+
+    @ConfigProperty(name = "archivedLogRetention.batchSize", defaultValue = "200")
+    int batchSize;
+
+    /** Pause between two batches in milliseconds. */
+    @ConfigProperty(name = "archivedLogRetention.batchPause", defaultValue = "2000")
+    long batchPause;
+
+    /** Time budget of one run in minutes. */
+    @ConfigProperty(name = "archivedLogRetention.maxRunTime", defaultValue = "60")
+    long maxRunTime;
+
+    @Inject
+    EntityManager entityManager;
+
+    @Inject
+    MeterRegistry registry;
+
+    @Inject
+    ArchivedLogRetention self;
+
+    @Scheduled(cron = "{archivedLogRetention.cron}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void purgeRegularly() {
+        Map<BuildStatus, Integer> retentionDays = parsePolicies();
+        if (retentionDays.isEmpty()) {
+            logger.debug("No archived log retention policies configured.");
+            return;
+        }
+        purgeExpiredLogs(retentionDays, Instant.now().plus(maxRunTime, ChronoUnit.MINUTES));
+    }
+
+    /**
+     * Drops logs of archived builds which are older than their status' retention time, until there is nothing more to
+     * drop or the deadline is reached.
+     *
+     * @param retentionDays retention time in days per status
+     * @param deadline time when no new batch should be started
+     */
+    @Timed
+    public void purgeExpiredLogs(Map<BuildStatus, Integer> retentionDays, Instant deadline) {
+        for (Map.Entry<BuildStatus, Integer> policy : retentionDays.entrySet()) {
+            BuildStatus status = policy.getKey();
+            Instant threshold = Instant.now().minus(policy.getValue(), ChronoUnit.DAYS);
+            logger.info("Dropping logs of archived {} builds submitted before {}.", status, threshold);
+
+            long rows = 0;
+            long bytes = 0;
+            while (Instant.now().isBefore(deadline)) {
+                long[] purged = self.purgeBatch(status, threshold, batchSize);
+                rows += purged[0];
+                bytes += purged[1];
+                registry.counter(className + ".rows.reclaimed", "status", status.name()).increment(purged[0]);
+                registry.counter(className + ".bytes.reclaimed", "status", status.name()).increment(purged[1]);
+                if (purged[0] < batchSize) {
+                    break;
+                }
+                if (!pause()) {
+                    return;
+                }
+            }
+            logger.info("Dropped logs of {} archived {} builds, reclaimed {} bytes.", rows, status, bytes);
+            if (!Instant.now().isBefore(deadline)) {
+                logger.info("Archived log retention run reached its time budget, continuing in the next run.");
+                return;
+            }
+        }
+    }
+
+    /**
+     * Drops logs of one batch of archived builds in a separate transaction. Rows locked by other transactions are
+     * skipped.
+     *
+     * @return number of purged rows and the number of reclaimed bytes
+     */
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public long[] purgeBatch(BuildStatus status, Instant threshold, int batchSize) {
+        Query query = entityManager.createNativeQuery(PURGE_BATCH)
+                .setParameter("status", status.name())
+                .setParameter("threshold", threshold)
+                .setParameter("batchSize", batchSize);
+        query.unwrap(NativeQuery.class)
+                .addScalar("row_count", StandardBasicTypes.LONG)
+                .addScalar("byte_count", StandardBasicTypes.LONG);
+        Object[] result = (Object[]) query.getSingleResult();
+        return new long[] { (Long) result[0], (Long) result[1] };
+    }
+
+    Map<BuildStatus, Integer> parsePolicies() {
+        Map<BuildStatus, Integer> result = new EnumMap<>(BuildStatus.class);
+        for (String policy : policies.orElse(List.of())) {
+            String[] parts = policy.split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid archived log retention policy: " + policy);
+            }
+            result.put(BuildStatus.valueOf(parts[0].trim()), Integer.valueOf(parts[1].trim()));
+        }
+        return result;
+    }
+
+    private boolean pause() {
+        try {
+            Thread.sleep(batchPause);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Archived log retention interrupted.");
+            return false;
+        }
+    }
+}
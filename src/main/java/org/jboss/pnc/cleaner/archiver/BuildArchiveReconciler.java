@@ -0,0 +1,267 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.archiver;
+
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.scheduler.Scheduled;
+import lombok.Data;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.context.ManagedExecutor;
+import org.jboss.pnc.cleaner.orchApi.OrchClientProducer;
+import org.jboss.pnc.client.BuildClient;
+import org.jboss.pnc.client.RemoteResourceException;
+import org.jboss.pnc.common.pnc.LongBase32IdConverter;
+import org.jboss.pnc.dto.Build;
+import org.jboss.pnc.rest.api.parameters.BuildsFilterParameters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.Semaphore;
+
+import static org.jboss.pnc.cleaner.archiver.BuildArchiver.BUILD_ARCHIVED;
+
+/**
+ * Finds differences between the builds marked as archived in PNC and the archived build records. Both sides are read
+ * sorted by build id, PNC page by page and the archive in batches of ids, and merge-joined, so the memory used does
+ * not depend on the number of builds.
+ * <p>
+ * A build marked as archived in PNC without an archived record is archived again. An archived build without the mark
+ * in PNC gets the mark. Archived builds which don't exist in PNC anymore (deleted temporary builds) are expected.
+ * Repairs run in parallel with bounded concurrency and only when enabled, otherwise the differences are only reported.
+ */
+@ApplicationScoped
+public class BuildArchiveReconciler {
+
+    private static final String className = BuildArchiveReconciler.class.getName();
+
+    private static final String ARCHIVED_IDS = "SELECT buildrecord_id FROM _archived_buildrecords"
+            + " WHERE buildrecord_id > :after ORDER BY buildrecord_id LIMIT :limit";
+
+    private final Logger logger = LoggerFactory.getLogger(BuildArchiveReconciler.class);
+
+    @ConfigProperty(name = "buildArchiveReconciler.repair", defaultValue = "false")
+    boolean repair;
+
+    @ConfigProperty(name = "buildArchiveReconciler.concurrency", defaultValue = "4")
+    int concurrency;
+
+    @ConfigProperty(name = "buildArchiveReconciler.batchSize", defaultValue = "5000")
+    int batchSize;
+
+    @Inject
+    BuildClient buildClient;
+
+    @Inject
+    OrchClientProducer orchClientProducer;
+
+    @Inject
+    BuildArchiver buildArchiver;
+
+    @Inject
+    EntityManager entityManager;
+
+    @Inject
+    ManagedExecutor executor;
+
+    @Inject
+    MeterRegistry registry;
+
+    @Data
+    public static class Report {
+        long pncBuilds;
+        long archivedBuilds;
+        long markedNotArchived;
+        long archivedNotMarked;
+        long archivedDeletedInPnc;
+        long repaired;
+        long repairFailed;
+    }
+
+    @Scheduled(cron = "{buildArchiveReconciler.cron}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void reconcileRegularly() {
+        reconcile(repair);
+    }
+
+    @Timed
+    public Report reconcile(boolean repair) {
+        logger.info("Reconciling archived builds with PNC, repair: {}.", repair);
+        return reconcile(readPncBuilds(), new ArchivedIds(this::loadArchivedIds, batchSize), repair);
+    }
+
+    /**
+     * Merge-joins the builds from PNC with the ids of the archived builds, both sorted by build id ascending.
+     */
+    Report reconcile(Iterator<Build> pncBuilds, PrimitiveIterator.OfLong archivedIds, boolean repair) {
+        Report report = new Report();
+        Semaphore permits = new Semaphore(concurrency);
+
+        Build build = next(pncBuilds);
+        Long archivedId = archivedIds.hasNext() ? archivedIds.nextLong() : null;
+
+        while (build != null || archivedId != null) {
+            long buildId = build == null ? Long.MAX_VALUE : LongBase32IdConverter.toLong(build.getId());
+            long archived = archivedId == null ? Long.MAX_VALUE : archivedId;
+            if (buildId < archived) {
+                report.pncBuilds++;
+                if (isMarked(build)) {
+                    report.markedNotArchived++;
+                    discrepancy("marked.not.archived", build.getId());
+                    if (repair) {
+                        Build toArchive = build;
+                        submit(permits, report, () -> buildArchiver.archiveBuild(toArchive));
+                    }
+                }
+                build = next(pncBuilds);
+            } else if (buildId > archived) {
+                report.archivedBuilds++;
+                report.archivedDeletedInPnc++;
+                archivedId = archivedIds.hasNext() ? archivedIds.nextLong() : null;
+            } else {
+                report.pncBuilds++;
+                report.archivedBuilds++;
+                if (!isMarked(build)) {
+                    report.archivedNotMarked++;
+                    discrepancy("archived.not.marked", build.getId());
+                    if (repair) {
+                        String id = build.getId();
+                        submit(permits, report, () -> markArchived(id));
+                    }
+                }
+                build = next(pncBuilds);
+                archivedId = archivedIds.hasNext() ? archivedIds.nextLong() : null;
+            }
+        }
+
+        // wait for the running repairs
+        permits.acquireUninterruptibly(concurrency);
+        logger.info("Reconciliation of archived builds finished: {}", report);
+        return report;
+    }
+
+    private Iterator<Build> readPncBuilds() {
+        BuildsFilterParameters buildsFilterParameters = new BuildsFilterParameters();
+        buildsFilterParameters.setRunning(false);
+        try {
+            // the collection loads the pages lazily while iterating
+            return buildClient.getAll(buildsFilterParameters, null, Optional.of("=asc=id"), Optional.empty())
+                    .iterator();
+        } catch (RemoteResourceException e) {
+            throw new RuntimeException("Cannot read builds from PNC", e);
+        }
+    }
+
+    private static Build next(Iterator<Build> builds) {
+        return builds.hasNext() ? builds.next() : null;
+    }
+
+    private static boolean isMarked(Build build) {
+        return build.getAttributes() != null && build.getAttributes().containsKey(BUILD_ARCHIVED);
+    }
+
+    private void discrepancy(String type, String buildId) {
+        registry.counter(className + "." + type + ".count").increment();
+        logger.warn("Archive discrepancy {} for build {}.", type, buildId);
+    }
+
+    private void markArchived(String buildId) {
+        try (BuildClient buildClientAuthenticated = orchClientProducer.getAuthenticatedBuildClient()) {
+            buildClientAuthenticated.addAttribute(buildId, BUILD_ARCHIVED, "true");
+        } catch (RemoteResourceException e) {
+            throw new RuntimeException("Failed to mark build " + buildId + " as archived in PNC", e);
+        }
+    }
+
+    private void submit(Semaphore permits, Report report, Runnable repairTask) {
+        permits.acquireUninterruptibly();
+        executor.runAsync(repairTask).whenComplete((result, error) -> {
+            synchronized (report) {
+                if (error == null) {
+                    report.repaired++;
+                } else {
+                    report.repairFailed++;
+                }
+            }
+            if (error != null) {
+                registry.counter(className + ".repair.failed.count").increment();
+                logger.error("Failed to repair archived build.", error);
+            }
+            permits.release();
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Long> loadArchivedIds(long after, int limit) {
+        return entityManager.createNativeQuery(ARCHIVED_IDS, Long.class)
+                .setParameter("after", after)
+                .setParameter("limit", limit)
+                .getResultList();
+    }
+
+    /**
+     * Loads at most <code>limit</code> ids of archived builds greater than <code>after</code> in ascending order.
+     */
+    @FunctionalInterface
+    interface BatchLoader {
+        List<Long> load(long after, int limit);
+    }
+
+    /**
+     * Ids of the archived builds in ascending order, read in batches with keyset pagination, so no transaction is held
+     * open during the whole reconciliation.
+     */
+    static class ArchivedIds implements PrimitiveIterator.OfLong {
+        private final BatchLoader loader;
+        private final int batchSize;
+        private Iterator<Long> batch = List.<Long> of().iterator();
+        private long lastId = Long.MIN_VALUE;
+        private boolean exhausted;
+
+        ArchivedIds(BatchLoader loader, int batchSize) {
+            this.loader = loader;
+            this.batchSize = batchSize;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!batch.hasNext() && !exhausted) {
+                List<Long> ids = loader.load(lastId, batchSize);
+                exhausted = ids.size() < batchSize;
+                batch = ids.iterator();
+            }
+            return batch.hasNext();
+        }
+
+        @Override
+        public long nextLong() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            lastId = batch.next();
+            return lastId;
+        }
+    }
+}
@@ -18,8 +18,10 @@
 package org.jboss.pnc.cleaner.archiver;
 
 import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.MeterRegistry;
 import io.quarkus.scheduler.Scheduled;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.context.ManagedExecutor;
 import org.eclipse.microprofile.rest.client.inject.RestClient;
 import org.jboss.pnc.cleaner.orchApi.OrchClientProducer;
 import org.jboss.pnc.client.BuildClient;
@@ -46,12 +48,23 @@ import jakarta.transaction.Transactional;
 import jakarta.ws.rs.core.Response;
 import java.io.BufferedReader;
 import java.io.Reader;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.ZoneOffset;
 import java.time.temporal.ChronoField;
 import java.time.temporal.IsoFields;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import static org.jboss.pnc.cleaner.archiver.ArchivedBuildRecord.ErrorGroup.INDY;
 import static org.jboss.pnc.cleaner.archiver.BuildCategorizer.*;
@@ -62,6 +75,7 @@ import static org.jboss.pnc.cleaner.archiver.BuildCategorizer.*;
 @ApplicationScoped
 public class BuildArchiver {
     private final Logger logger = LoggerFactory.getLogger(BuildArchiver.class);
+    private static final String className = BuildArchiver.class.getName();
     public static final String BUILD_ARCHIVED = "BUILD_ARCHIVED";
     @Inject
     @RestClient
@@ -80,19 +94,88 @@ public class BuildArchiver {
     @Inject
     OrchClientProducer orchClientProducer;
 
+    @Inject
+    ArchivedBuildStats archivedBuildStats;
+
+    @Inject
+    ArchivedDimensions archivedDimensions;
+
+    @Inject
+    ManagedExecutor executor;
+
+    @Inject
+    MeterRegistry registry;
+
+    @ConfigProperty(name = "buildArchiver.lane.errors.concurrency", defaultValue = "2")
+    int errorsLaneConcurrency;
+
+    @ConfigProperty(name = "buildArchiver.lane.temporary.concurrency", defaultValue = "1")
+    int temporaryLaneConcurrency;
+
+    @ConfigProperty(name = "buildArchiver.lane.bulk.concurrency", defaultValue = "1")
+    int bulkLaneConcurrency;
+
+    /** Builds being archived, the notified builds and the scheduled sweep can overlap. */
+    private final Set<String> archiving = ConcurrentHashMap.newKeySet();
+
     @Timed
     @Scheduled(cron = "{buildArchiverScheduler.cron}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
     public void archiveBuilds() {
         logger.info("Archiving Builds ...");
         Collection<Build> unverifiedBuilds = getUnarchivedBuilds().getAll();
         logger.info("Found {} unverified builds.", unverifiedBuilds.size());
-        unverifiedBuilds.forEach(b -> {
+        archiveInLanes(unverifiedBuilds);
+    }
+
+    /**
+     * Archives the builds in priority lanes, see {@link ArchiveLane}. All lanes run at the same time, each with its own
+     * number of workers, and the method returns when all builds are processed.
+     */
+    public void archiveInLanes(Collection<Build> builds) {
+        Map<ArchiveLane, Queue<Build>> lanes = new EnumMap<>(ArchiveLane.class);
+        for (ArchiveLane lane : ArchiveLane.values()) {
+            lanes.put(lane, new ConcurrentLinkedQueue<>());
+        }
+        builds.forEach(build -> lanes.get(ArchiveLane.of(build)).add(build));
+
+        List<CompletableFuture<Void>> workers = new ArrayList<>();
+        lanes.forEach((lane, queue) -> {
+            logger.info("Archiving {} builds in lane {}.", queue.size(), lane);
+            int laneWorkers = Math.min(getConcurrency(lane), queue.size());
+            for (int i = 0; i < laneWorkers; i++) {
+                workers.add(executor.runAsync(() -> archiveFromLane(lane, queue)));
+            }
+        });
+        CompletableFuture.allOf(workers.toArray(CompletableFuture[]::new)).join();
+    }
+
+    private void archiveFromLane(ArchiveLane lane, Queue<Build> queue) {
+        Build build;
+        while ((build = queue.poll()) != null) {
+            if (!archiving.add(build.getId())) {
+                logger.info("Build {} is already being archived, skipping.", build.getId());
+                continue;
+            }
             try {
-                archiveBuild(b);
+                archiveBuild(build);
+                if (build.getEndTime() != null) {
+                    registry.timer(className + ".lane.latency", "lane", lane.name())
+                            .record(Duration.between(build.getEndTime(), Instant.now()));
+                }
             } catch (Exception ex) {
-                logger.error("Failed to archive build " + b.getId(), ex);
+                logger.error("Failed to archive build " + build.getId(), ex);
+            } finally {
+                archiving.remove(build.getId());
             }
-        });
+        }
+    }
+
+    private int getConcurrency(ArchiveLane lane) {
+        return switch (lane) {
+            case ERRORS -> errorsLaneConcurrency;
+            case TEMPORARY -> temporaryLaneConcurrency;
+            case BULK -> bulkLaneConcurrency;
+        };
     }
 
     @Timed
@@ -149,9 +232,11 @@ public class BuildArchiver {
 
     @Transactional
     public void archiveBuildRecord(Build build, LogParser buildLog, LogParser alignmentLog) {
-        ArchivedBuildRecord archivedBuildRecord;
+        ArchivedBuildRecord archivedBuildRecord = ArchivedBuildRecord.findById(parseBuildID(build.getId()));
+        ArchivedBuildDailyStats.Key previousStats = archivedBuildRecord == null ? null
+                : ArchivedBuildStats.keyOf(archivedBuildRecord);
         try {
-            archivedBuildRecord = mapBuild(build);
+            archivedBuildRecord = mapBuild(build, archivedBuildRecord);
         } catch (RemoteResourceException ex) {
             throw new RuntimeException("Failed to read build info from PNC", ex);
         }
@@ -166,20 +251,30 @@ public class BuildArchiver {
         }
         archivedBuildRecord.buildType = buildType;
 
-        archivedBuildRecord.trimmedBuildLog = buildLog.getTrimmedLog();
-        archivedBuildRecord.trimmedAlignLog = alignmentLog.getTrimmedLog();
+        archivedBuildRecord.trimmedBuildLog = getTrimmedLog(buildLog);
+        archivedBuildRecord.trimmedAlignLog = getTrimmedLog(alignmentLog);
 
         archivedBuildRecord.status = processErrors(archivedBuildRecord, build.getStatus(), buildLog, alignmentLog);
 
+        archivedBuildRecord.archivedTime = Instant.now();
+        archivedDimensions.store(archivedBuildRecord);
+
         archivedBuildRecord.persist();
+        archivedBuildStats.update(previousStats, ArchivedBuildStats.keyOf(archivedBuildRecord));
+    }
+
+    /**
+     * Missing or not kept logs are stored as NULL, so they are not counted by the log retention and the partial
+     * indexes.
+     */
+    private static String getTrimmedLog(LogParser log) {
+        return log.getTrimmedLogLength() == 0 ? null : log.getTrimmedLog();
     }
 
-    private ArchivedBuildRecord mapBuild(Build build) throws RemoteResourceException {
-        long dbID = parseBuildID(build.getId());
-        ArchivedBuildRecord archived = ArchivedBuildRecord.findById(dbID);
+    private ArchivedBuildRecord mapBuild(Build build, ArchivedBuildRecord archived) throws RemoteResourceException {
         if (archived == null) {
             archived = new ArchivedBuildRecord();
-            archived.buildRecordId = dbID;
+            archived.buildRecordId = parseBuildID(build.getId());
         }
 
         archived.submitTime = build.getSubmitTime();
@@ -195,6 +290,7 @@ public class BuildArchiver {
         archived.brewPullActive = build.getBuildConfigRevision().isBrewPullActive();
         archived.buildcontentID = build.getBuildContentId();
 
+        archived.attributes = new HashMap<>(build.getAttributes());
         archived.executionRootName = build.getAttributes().get(Attributes.BUILD_BREW_NAME);
         archived.executionRootVersion = build.getAttributes().get(Attributes.BUILD_BREW_VERSION);
 
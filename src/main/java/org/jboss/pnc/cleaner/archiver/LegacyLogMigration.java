@@ -0,0 +1,187 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.archiver;
+
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.scheduler.Scheduled;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.hibernate.query.NativeQuery;
+import org.hibernate.type.StandardBasicTypes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import jakarta.transaction.Transactional;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Moves the trimmed logs written by the older versions as large objects into the text columns and unlinks the large
+ * objects. The migration <code>V2</code> only renames the large object columns to <code>*_oid</code>, so the service
+ * starts without rewriting the archive; the logs are moved here in small batches, each in its own short transaction.
+ * Once there is nothing left to move, the job stops checking until the next start of the service.
+ */
+@ApplicationScoped
+public class LegacyLogMigration {
+
+    private static final String className = LegacyLogMigration.class.getName();
+
+    private static final String LEGACY_COLUMNS = "SELECT count(*) FROM information_schema.columns"
+            + " WHERE table_name = '_archived_buildrecords'"
+            + " AND column_name IN ('trimmed_buildlog_oid', 'trimmed_repourlog_oid')";
+
+    // walks the primary key from the last moved row, so a batch doesn't scan again the rows without large objects; the
+    // logs in the text columns are newer than the large objects, they are kept and the large objects only unlinked
+    private static final String MOVE_BATCH = "WITH batch AS ("
+            + " SELECT buildrecord_id, trimmed_buildlog_oid, trimmed_repourlog_oid FROM _archived_buildrecords"
+            + " WHERE buildrecord_id > :after"
+            + " AND (trimmed_buildlog_oid IS NOT NULL OR trimmed_repourlog_oid IS NOT NULL)"
+            + " ORDER BY buildrecord_id LIMIT :batchSize FOR UPDATE SKIP LOCKED),"
+            + " moved AS (UPDATE _archived_buildrecords r SET"
+            + " trimmed_buildlog = coalesce(r.trimmed_buildlog,"
+            + " convert_from(lo_get(batch.trimmed_buildlog_oid), 'UTF8')),"
+            + " trimmed_repourlog = coalesce(r.trimmed_repourlog,"
+            + " convert_from(lo_get(batch.trimmed_repourlog_oid), 'UTF8')),"
+            + " trimmed_buildlog_oid = NULL, trimmed_repourlog_oid = NULL"
+            + " FROM batch WHERE r.buildrecord_id = batch.buildrecord_id"
+            + " RETURNING batch.buildrecord_id, batch.trimmed_buildlog_oid AS build_oid,"
+            + " batch.trimmed_repourlog_oid AS repour_oid)"
+            + " SELECT count(*) AS row_count,"
+            + " coalesce(sum(lo_unlink(build_oid)), 0) + coalesce(sum(lo_unlink(repour_oid)), 0) AS unlinked_count,"
+            + " coalesce(max(buildrecord_id), :after) AS last_id"
+            + " FROM moved";
+
+    private static final String LEGACY_LOGS_LEFT = "SELECT EXISTS (SELECT 1 FROM _archived_buildrecords"
+            + " WHERE trimmed_buildlog_oid IS NOT NULL OR trimmed_repourlog_oid IS NOT NULL)";
+
+    private final Logger logger = LoggerFactory.getLogger(LegacyLogMigration.class);
+
+    @ConfigProperty(name = "legacyLogMigration.batchSize", defaultValue = "100")
+    int batchSize;
+
+    /** Pause between two batches in milliseconds. */
+    @ConfigProperty(name = "legacyLogMigration.batchPause", defaultValue = "1000")
+    long batchPause;
+
+    /** Time budget of one run in minutes. */
+    @ConfigProperty(name = "legacyLogMigration.maxRunTime", defaultValue = "30")
+    long maxRunTime;
+
+    @Inject
+    EntityManager entityManager;
+
+    @Inject
+    MeterRegistry registry;
+
+    @Inject
+    LegacyLogMigration self;
+
+    private volatile boolean finished;
+
+    /** Id of the last moved record, the next batch continues after it. */
+    private volatile long position;
+
+    @Scheduled(cron = "{legacyLogMigration.cron}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void moveRegularly() {
+        if (finished) {
+            return;
+        }
+        finished = moveLegacyLogs(Instant.now().plus(maxRunTime, ChronoUnit.MINUTES));
+    }
+
+    /**
+     * Moves the legacy logs until there is nothing more to move or the deadline is reached.
+     *
+     * @param deadline time when no new batch should be started
+     * @return true if there are no legacy logs left
+     */
+    @Timed
+    public boolean moveLegacyLogs(Instant deadline) {
+        if (!self.hasLegacyColumns()) {
+            return true;
+        }
+        long rows = 0;
+        try {
+            while (Instant.now().isBefore(deadline)) {
+                long[] moved = self.moveBatch(position, batchSize);
+                rows += moved[0];
+                position = moved[2];
+                registry.counter(className + ".rows.moved").increment(moved[0]);
+                registry.counter(className + ".largeObjects.unlinked").increment(moved[1]);
+                if (moved[0] == 0) {
+                    // the end of the table was reached, rows locked by the archiver were skipped and are picked up
+                    // by the next pass
+                    position = 0;
+                    return !self.hasLegacyLogs();
+                }
+                if (!pause()) {
+                    return false;
+                }
+            }
+            logger.info("Legacy log migration reached its time budget, continuing in the next run.");
+            return false;
+        } finally {
+            logger.info("Moved legacy logs of {} archived builds.", rows);
+        }
+    }
+
+    @Transactional
+    public boolean hasLegacyColumns() {
+        return ((Number) entityManager.createNativeQuery(LEGACY_COLUMNS).getSingleResult()).longValue() > 0;
+    }
+
+    @Transactional
+    public boolean hasLegacyLogs() {
+        return entityManager.createNativeQuery(LEGACY_LOGS_LEFT).getSingleResult().equals(Boolean.TRUE);
+    }
+
+    /**
+     * Moves the logs of one batch of archived builds in a separate transaction. Rows locked by other transactions are
+     * skipped.
+     *
+     * @param after id of the last record moved by the previous batch, 0 to start from the beginning
+     * @return number of moved rows, the number of unlinked large objects and the id of the last moved record
+     */
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public long[] moveBatch(long after, int batchSize) {
+        Query query = entityManager.createNativeQuery(MOVE_BATCH)
+                .setParameter("after", after)
+                .setParameter("batchSize", batchSize);
+        query.unwrap(NativeQuery.class)
+                .addScalar("row_count", StandardBasicTypes.LONG)
+                .addScalar("unlinked_count", StandardBasicTypes.LONG)
+                .addScalar("last_id", StandardBasicTypes.LONG);
+        Object[] result = (Object[]) query.getSingleResult();
+        return new long[] { (Long) result[0], (Long) result[1], (Long) result[2] };
+    }
+
+    private boolean pause() {
+        try {
+            Thread.sleep(batchPause);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Legacy log migration interrupted.");
+            return false;
+        }
+    }
+}
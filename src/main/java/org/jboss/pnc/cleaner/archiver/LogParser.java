@@ -97,6 +97,13 @@ public class LogParser {
         return trimmedLog.stream().collect(Collectors.joining("\n"));
     }
 
+    /**
+     * @return length of the trimmed log in characters
+     */
+    public long getTrimmedLogLength() {
+        return trimmedLog.isEmpty() ? 0 : trimmedLogSize + trimmedLog.size() - 1;
+    }
+
     private interface LineMatcher {
 
         boolean lineMatches(String line);
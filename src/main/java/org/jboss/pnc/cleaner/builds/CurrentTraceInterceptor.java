@@ -0,0 +1,54 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.builds;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.protocol.HttpContext;
+import org.jboss.pnc.api.constants.MDCHeaderKeys;
+import org.jboss.pnc.common.Strings;
+import org.jboss.pnc.common.otel.OtelUtils;
+
+/**
+ * Adds the trace headers of the span current in the thread sending the request. A client created with the trace
+ * headers copied once would send the trace of the run it was created in with the requests of all the later runs.
+ */
+public class CurrentTraceInterceptor implements HttpRequestInterceptor {
+
+    @Override
+    public void process(HttpRequest request, HttpContext context) {
+        SpanContext spanContext = Span.current().getSpanContext();
+        if (!spanContext.isValid()) {
+            return;
+        }
+        request.setHeader(MDCHeaderKeys.TRACE_ID.getHeaderName(), spanContext.getTraceId());
+        request.setHeader(MDCHeaderKeys.SPAN_ID.getHeaderName(), spanContext.getSpanId());
+        OtelUtils.createTraceStateHeader(spanContext).forEach((k, v) -> {
+            if (!Strings.isEmpty(v)) {
+                request.setHeader(k, v);
+            }
+        });
+        OtelUtils.createTraceParentHeader(spanContext).forEach((k, v) -> {
+            if (!Strings.isEmpty(v)) {
+                request.setHeader(k, v);
+            }
+        });
+    }
+}
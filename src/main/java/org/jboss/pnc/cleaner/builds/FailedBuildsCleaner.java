@@ -20,6 +20,8 @@ package org.jboss.pnc.cleaner.builds;
 import io.micrometer.core.annotation.Timed;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
 import io.opentelemetry.api.GlobalOpenTelemetry;
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.api.trace.SpanBuilder;
@@ -27,6 +29,7 @@ import io.opentelemetry.api.trace.SpanContext;
 import io.opentelemetry.api.trace.SpanKind;
 import io.opentelemetry.context.Scope;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 
 import io.quarkus.scheduler.Scheduled;
 
@@ -35,10 +38,11 @@ import org.commonjava.indy.client.core.IndyClientException;
 import org.commonjava.indy.client.core.IndyClientModule;
 import org.commonjava.indy.client.core.auth.IndyClientAuthenticator;
 import org.commonjava.indy.client.core.auth.OAuth20BearerTokenAuthenticator;
-import org.commonjava.indy.client.core.module.IndyStoresClientModule;
 import org.commonjava.indy.folo.client.IndyFoloAdminClientModule;
 import org.commonjava.indy.folo.client.IndyFoloContentClientModule;
+import org.commonjava.indy.model.core.ArtifactStore;
 import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.HostedRepository;
 import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.model.core.StoreType;
 import org.commonjava.indy.model.core.dto.StoreListingDTO;
@@ -46,13 +50,16 @@ import org.commonjava.indy.model.core.io.IndyObjectMapper;
 import org.commonjava.util.jhttpc.model.SiteConfig;
 import org.commonjava.util.jhttpc.model.SiteConfigBuilder;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.context.ManagedExecutor;
 import org.jboss.pnc.api.constants.MDCHeaderKeys;
+import org.jboss.pnc.cleaner.common.CleanupLock;
 import org.jboss.pnc.client.BuildClient;
 import org.jboss.pnc.client.RemoteCollection;
 import org.jboss.pnc.client.RemoteResourceException;
 import org.jboss.pnc.client.RemoteResourceNotFoundException;
 import org.jboss.pnc.common.Strings;
 import org.jboss.pnc.common.otel.OtelUtils;
+import org.jboss.pnc.common.pnc.LongBase32IdConverter;
 import org.jboss.pnc.dto.Build;
 import org.jboss.pnc.enums.BuildStatus;
 import org.jboss.pnc.quarkus.client.auth.runtime.PNCClientAuth;
@@ -61,21 +68,34 @@ import org.slf4j.LoggerFactory;
 
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
+import jakarta.transaction.Transactional;
 
 import java.text.MessageFormat;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
-import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
-import static org.commonjava.indy.pkg.npm.model.NPMPackageTypeDescriptor.NPM_PKG_KEY;
+import static org.commonjava.indy.model.core.GenericPackageTypeDescriptor.GENERIC_PKG_KEY;
 
 @SuppressWarnings("deprecation")
 @ApplicationScoped
@@ -84,8 +104,17 @@ public class FailedBuildsCleaner {
     /**
      * Builds have format with build-{build-id} where {build-id} is a 13 characters long base32 number.
      */
-    private static final Pattern INDY_BUILD_GROUP_PATTERN = Pattern.compile("build-([A-Z0-9]{13})");
+    private static final String BUILD_GROUP_PREFIX = "build-";
+    private static final Pattern INDY_BUILD_GROUP_PATTERN = Pattern.compile(BUILD_GROUP_PREFIX + "([A-Z0-9]{13})");
+    /** Generic http groups have format g-{host}-build-{build-id}. */
+    private static final Pattern GENERIC_BUILD_GROUP_PATTERN = Pattern
+            .compile("g-.+-" + BUILD_GROUP_PREFIX + "([A-Z0-9]{13})");
     private static final String className = FailedBuildsCleaner.class.getName();
+    /** Store type used in the logs of the tracking records cleanup. */
+    private static final String FOLO_RECORD_TYPE = "folo";
+
+    /** Number of groups processed between time budget checks when the PNC queries are not batched. */
+    private static final int DEFAULT_CHUNK_SIZE = 100;
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
@@ -106,6 +135,29 @@ public class FailedBuildsCleaner {
     @ConfigProperty(name = "failedbuildscleaner.indy.requesttimeout")
     int indyRequestTimeout;
 
+    /** Indy package types whose build groups are cleaned, each of them by a concurrent pass. */
+    @ConfigProperty(name = "failedbuildscleaner.packageTypes", defaultValue = "maven,npm")
+    List<String> packageTypes;
+
+    /** Number of groups cleaned in parallel by each package type pass. */
+    @ConfigProperty(name = "failedbuildscleaner.concurrency", defaultValue = "1")
+    int concurrency;
+
+    /** Number of groups resolved by a single PNC query, 1 or less resolves each group by its own query. */
+    @ConfigProperty(name = "failedbuildscleaner.pnc.batchSize", defaultValue = "100")
+    int pncBatchSize;
+
+    /**
+     * Time budget of a cleanup run in minutes, zero or less means no limit. A run which spends it stops and the next
+     * one continues where it stopped.
+     */
+    @ConfigProperty(name = "failedbuildscleaner.maxRunTime", defaultValue = "0")
+    int maxRunTime;
+
+    /** Maximal number of Indy requests per second of all workers together, zero or less means no limit. */
+    @ConfigProperty(name = "failedbuildscleaner.indy.maxRequestsPerSecond", defaultValue = "0")
+    double indyMaxRequestsPerSecond;
+
     @ConfigProperty(name = "pnc-cleaner.indy-client.metrics.enabled", defaultValue = "false")
     Boolean indyClientMetricsEnabled;
 
@@ -130,21 +182,65 @@ public class FailedBuildsCleaner {
     @Inject
     MeterRegistry registry;
 
+    @Inject
+    ManagedExecutor executor;
+
+    @Inject
+    KeptBuildGroups keptBuildGroups;
+
+    @Inject
+    CleanupLock cleanupLock;
+
+    @Inject
+    FailedBuildsCleaner self;
+
+    private Indy sharedIndy;
+
+    /** Number of groups left for the next runs by package type. */
+    private final Map<String, AtomicLong> backlogs = new ConcurrentHashMap<>();
+
     private Counter errCounter;
     private Counter warnCounter;
 
+    private IndyClientMetrics indyMetrics;
+
     @PostConstruct
     void initMetrics() {
         errCounter = registry.counter(className + ".error.count");
         warnCounter = registry.counter(className + ".warning.count");
+        indyMetrics = new IndyClientMetrics(registry);
     }
 
     @Scheduled(cron = "{failedbuildscleaner.cron}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
     void cleanRegularly() {
-        logger.info("Starting regular failed builds cleanup job.");
-        Instant limit = Instant.now().minus(retention, ChronoUnit.HOURS);
-        logger.info("Cleaning up failed builds older than {}.", limit);
-        cleanOlder(limit);
+        cleanupLock.runScheduled("regular failed builds cleanup", () -> {
+            logger.info("Starting regular failed builds cleanup job.");
+            Instant limit = Instant.now().minus(retention, ChronoUnit.HOURS);
+            logger.info("Cleaning up failed builds older than {}.", limit);
+            cleanOlder(limit);
+        });
+    }
+
+    @Scheduled(
+            cron = "{failedbuildscleaner.trackingRecords.cron}",
+            concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void cleanSealedTrackingRecordsRegularly() {
+        cleanupLock.runScheduled("regular sealed tracking records cleanup", () -> {
+            logger.info("Starting regular sealed tracking records cleanup job.");
+            Instant limit = Instant.now().minus(retention, ChronoUnit.HOURS);
+            logger.info("Clearing sealed tracking records of failed builds older than {}.", limit);
+            cleanSealedTrackingRecords(limit);
+        });
+    }
+
+    @Scheduled(cron = "{failedbuildscleaner.orphans.cron}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void sweepOrphansRegularly() {
+        cleanupLock.runScheduled("regular orphaned Indy stores sweep", () -> {
+            logger.info("Starting regular orphaned Indy stores sweep job.");
+            Instant limit = Instant.now().minus(retention, ChronoUnit.HOURS);
+            logger.info("Sweeping orphaned stores of failed builds older than {}.", limit);
+            sweepOrphans(limit);
+        });
     }
 
     /**
@@ -154,11 +250,247 @@ public class FailedBuildsCleaner {
      */
     @Timed
     public void cleanOlder(Instant limit) {
+        process(limit, null, null);
+    }
+
+    /**
+     * Finds the Indy content of builds started before the provided point in time, which {@link #cleanOlder(Instant)}
+     * would delete, without deleting anything. The decisions to keep groups are collected as well instead of being
+     * stored, so planning writes nothing.
+     *
+     * @param limit point in time marking the line which builds should be deleted
+     * @return the cleanups to be done and the groups to be kept, never null
+     */
+    @Timed
+    public FailedBuildsPlan planOlder(Instant limit) {
+        Queue<PlannedIndyCleanup> plannedCleanups = new ConcurrentLinkedQueue<>();
+        Queue<PlannedKeptGroup> plannedKeptGroups = new ConcurrentLinkedQueue<>();
+        process(limit, plannedCleanups, plannedKeptGroups);
+        return new FailedBuildsPlan(new ArrayList<>(plannedCleanups), new ArrayList<>(plannedKeptGroups));
+    }
+
+    /**
+     * Stores the decisions to keep groups and deletes the Indy content listed in a plan created by
+     * {@link #planOlder(Instant)}. The builds are not checked in PNC again.
+     *
+     * @param plannedCleanups the cleanups to be done
+     * @param keptGroups the decisions to keep groups, null for plans created before they were collected
+     * @return number of cleanups which failed
+     */
+    @Timed
+    public int executePlanned(Collection<PlannedIndyCleanup> plannedCleanups, Collection<PlannedKeptGroup> keptGroups) {
+        if (keptGroups != null && !keptGroups.isEmpty()) {
+            try {
+                keptBuildGroups.keepPlanned(keptGroups);
+            } catch (RuntimeException e) {
+                // the groups will only be checked in PNC again on the next run
+                errCounter.increment();
+                logger.error(
+                        "Failed to store planned decisions to keep groups of " + keptGroups.size() + " builds.",
+                        e);
+            }
+        }
+
+        IndyOperations indy = createSession(Instant.now()).getIndy();
+
+        AtomicInteger failures = new AtomicInteger();
+        runConcurrently(plannedCleanups, cleanup -> {
+            logger.info("Cleaning planned {} repositories for {}.", cleanup.getPackageType(), cleanup.getGroupName());
+            try {
+                deleteBuildStores(
+                        cleanup.getPackageType(),
+                        cleanup.getGroupName(),
+                        cleanup.getGenericStoreKeys(),
+                        indy);
+            } catch (IndyClientException e) {
+                errCounter.increment();
+                failures.incrementAndGet();
+                logger.error("Failed to perform cleanups in Indy for " + cleanup.getGroupName(), e);
+            }
+        });
+        return failures.get();
+    }
+
+    /**
+     * Clears sealed Folo tracking records of failed builds started before the provided point in time, including the
+     * records whose build groups were removed by other means. The builds are resolved in PNC by a single query per
+     * chunk of records and the records are cleared concurrently under the Indy rate limit.
+     *
+     * @param limit point in time marking the line which builds should be deleted
+     * @return number of cleared tracking records
+     */
+    @Timed
+    public int cleanSealedTrackingRecords(Instant limit) {
+        FailedBuildsCleanerSession session = createSession(limit);
+        Set<String> trackingIds;
+        try {
+            trackingIds = session.getIndy().listSealedTrackingIds();
+        } catch (IndyClientException e) {
+            errCounter.increment();
+            logger.error("Error getting sealed tracking records from Indy.", e);
+            return 0;
+        }
+
+        long[] buildIds = SortedIds.difference(
+                decodeBuildIds(FOLO_RECORD_TYPE, trackingIds, Function.identity(), INDY_BUILD_GROUP_PATTERN),
+                keptBuildGroups.getValidIds());
+        logger.info(
+                "Found {} sealed tracking records, checking {} of them, which belong to builds not known to be kept.",
+                trackingIds.size(),
+                buildIds.length);
+
+        AtomicInteger cleared = new AtomicInteger();
+        Counter clearedCounter = registry.counter(className + ".trackingRecords.cleared.count");
+        int chunkSize = pncBatchSize > 1 ? pncBatchSize : DEFAULT_CHUNK_SIZE;
+        for (int i = 0; i < buildIds.length; i += chunkSize) {
+            List<String> chunk = toGroupNames(buildIds, i, Math.min(i + chunkSize, buildIds.length));
+            Map<String, Build> builds;
+            try {
+                builds = getBuildRecords(chunk);
+            } catch (CleanerException e) {
+                errCounter.increment();
+                logger.error("Error loading build records of " + chunk.size() + " tracking records. Skipping.", e);
+                continue;
+            }
+
+            List<String> expired = new ArrayList<>();
+            for (String trackingId : chunk) {
+                Build build = builds.get(trackingId);
+                if (shouldClean(FOLO_RECORD_TYPE, trackingId, build, session)) {
+                    expired.add(trackingId);
+                } else if (keptBuildGroups.isEnabled() && keptBuildGroups.isFinal(build, failedStatuses)) {
+                    session.addKeptBuild(build);
+                }
+            }
+            runConcurrently(expired, trackingId -> {
+                try {
+                    session.getIndy().clearTrackingRecordIfExists(trackingId);
+                    cleared.incrementAndGet();
+                    clearedCounter.increment();
+                } catch (IndyClientException e) {
+                    errCounter.increment();
+                    logger.error("Failed to clear tracking record " + trackingId, e);
+                }
+            });
+            storeKeptBuilds(session);
+        }
+        logger.info("Cleared {} sealed tracking records.", cleared.get());
+        return cleared.get();
+    }
+
+    /**
+     * Cleans stores of builds started before the provided point in time, which were left behind by interrupted
+     * cleanups: hosted repositories and generic http groups whose build group is already gone. The builds are checked
+     * in PNC the same way as by {@link #cleanOlder(Instant)}.
+     *
+     * @param limit point in time marking the line which builds should be deleted
+     */
+    @Timed
+    public void sweepOrphans(Instant limit) {
+        FailedBuildsCleanerSession session = createSession(limit);
+        try {
+            findOrphans(session).forEach((packageType, orphanIds) -> {
+                logger.info("Found {} orphaned {} stores.", orphanIds.length, packageType);
+                registry.counter(className + ".orphans.count", "packageType", packageType).increment(orphanIds.length);
+                if (GENERIC_PKG_KEY.equals(packageType)) {
+                    sweepGenericOrphans(orphanIds, session);
+                } else {
+                    processGroups(packageType, orphanIds, Instant.MAX, false, session);
+                }
+            });
+        } catch (RuntimeException e) {
+            errCounter.increment();
+            logger.error("Sweep of orphaned Indy stores failed.", e);
+        }
+    }
+
+    /**
+     * Cleans generic http groups of builds without any build group or hosted repository. Unlike for the other package
+     * types, only the generic http groups listed by Indy and their constituents are deleted, the builds have no
+     * generic http group or hosted repository named after them and their tracking records are handled with their
+     * build groups.
+     *
+     * @param buildIds sorted ids of the builds with orphaned generic http groups
+     */
+    void sweepGenericOrphans(long[] buildIds, FailedBuildsCleanerSession session) {
+        IndyOperations indy = session.getIndy();
+        Counter cleanedCounter = registry.counter(className + ".cleaned.count", "packageType", GENERIC_PKG_KEY);
+        int chunkSize = pncBatchSize > 1 ? pncBatchSize : DEFAULT_CHUNK_SIZE;
+        for (int i = 0; i < buildIds.length; i += chunkSize) {
+            List<String> chunk = toGroupNames(buildIds, i, Math.min(i + chunkSize, buildIds.length));
+            Map<String, Build> builds;
+            try {
+                builds = getBuildRecords(chunk);
+            } catch (CleanerException e) {
+                errCounter.increment();
+                logger.error("Error loading build records of " + chunk.size() + " generic http orphans. Skipping.", e);
+                continue;
+            }
+            List<String> expired = new ArrayList<>();
+            for (String buildContentId : chunk) {
+                Build build = builds.get(buildContentId);
+                if (shouldClean(GENERIC_PKG_KEY, buildContentId, build, session)) {
+                    expired.add(buildContentId);
+                } else if (keptBuildGroups.isEnabled() && keptBuildGroups.isFinal(build, failedStatuses)) {
+                    session.addKeptBuild(build);
+                }
+            }
+            runConcurrently(expired, buildContentId -> {
+                List<StoreKey> genericRepos = session.findGenericRepos(buildContentId);
+                logger.info("Cleaning {} orphaned generic-http stores of {}.", genericRepos.size(), buildContentId);
+                try {
+                    deleteGenericStores(genericRepos, true, indy);
+                    deleteGenericStores(genericRepos, false, indy);
+                    cleanedCounter.increment();
+                } catch (IndyClientException e) {
+                    errCounter.increment();
+                    logger.error("Failed to clean orphaned generic-http stores of " + buildContentId, e);
+                }
+            });
+            storeKeptBuilds(session);
+        }
+    }
+
+    /**
+     * Lists the groups and hosted repositories of all package types once and finds the builds, whose stores remained
+     * without their build group. Builds known to be kept are left out. Only sorted build ids are held in memory, the
+     * store listings are dropped once decoded.
+     *
+     * @return sorted ids of builds with orphaned stores by package type, generic http groups of builds without any
+     *         build group or hosted repository come last
+     */
+    Map<String, long[]> findOrphans(FailedBuildsCleanerSession session) {
+        long[] handledIds = keptBuildGroups.getValidIds();
+        for (String packageType : packageTypes) {
+            handledIds = SortedIds.union(handledIds, getGroupIds(packageType, session));
+        }
+
+        Map<String, long[]> orphans = new LinkedHashMap<>();
+        for (String packageType : packageTypes) {
+            long[] orphanIds = SortedIds.difference(getHostedIds(packageType, session), handledIds);
+            orphans.put(packageType, orphanIds);
+        }
+        // generic groups of builds with an orphaned hosted repository are deleted along with it
+        for (long[] orphanIds : orphans.values()) {
+            handledIds = SortedIds.union(handledIds, orphanIds);
+        }
+        orphans.put(GENERIC_PKG_KEY, SortedIds.difference(getGenericGroupIds(session), handledIds));
+        return orphans;
+    }
+
+    /**
+     * Cleans builds started before the provided point in time or only collects the cleanups to be done and the groups
+     * to be kept, if the queues for them are given.
+     */
+    private void process(
+            Instant limit,
+            Queue<PlannedIndyCleanup> plannedCleanups,
+            Queue<PlannedKeptGroup> plannedKeptGroups) {
 
         // Create a parent child span with values from MDC
         SpanBuilder spanBuilder = OtelUtils.buildChildSpan(
                 GlobalOpenTelemetry.get().getTracer(""),
-                "FailedBuildsCleaner.cleanOlder",
+                plannedCleanups == null ? "FailedBuildsCleaner.cleanOlder" : "FailedBuildsCleaner.planOlder",
                 SpanKind.CLIENT,
                 null,
                 null,
@@ -172,29 +504,256 @@ public class FailedBuildsCleaner {
 
         // put the span into the current Context
         try (Scope scope = span.makeCurrent()) {
-            logger.info("Retrieving service account auth token.");
-            String serviceAccountToken = pncClientAuth.getAuthToken();
-
-            logger.info("Initializing Indy client.");
-            Indy indyClient = initIndy(serviceAccountToken);
-            FailedBuildsCleanerSession session = new FailedBuildsCleanerSession(indyClient, limit);
-
-            // get list of build group names from Indy
-            String[] packageTypes = new String[] { MAVEN_PKG_KEY, NPM_PKG_KEY };
-            for (String packageType : packageTypes) {
-                logger.info("Loading list of existing {} repository groups from Indy.", packageType);
-                List<String> groupNames = getGroupNames(packageType, session);
-
-                // cycle through them and clean one by one
-                for (String groupName : groupNames) {
-                    cleanBuildIfNeeded(packageType, groupName, session);
-                }
-            }
+            FailedBuildsCleanerSession session = createSession(limit);
+            session.setPlannedCleanups(plannedCleanups);
+            session.setPlannedKeptGroups(plannedKeptGroups);
+
+            long[] keptIds = keptBuildGroups.getValidIds();
+            // the time budget applies to the cleanup only, a plan has to be complete
+            boolean resumable = plannedCleanups == null;
+            Instant deadline = resumable && maxRunTime > 0 ? Instant.now().plus(maxRunTime, ChronoUnit.MINUTES)
+                    : Instant.MAX;
+
+            // the package types are processed concurrently sharing the session with its Indy client and rate limiter,
+            // a pass waits for its workers only and the workers never wait for other tasks on the executor
+            CompletableFuture<?>[] passes = packageTypes.stream()
+                    .map(
+                            packageType -> executor.runAsync(
+                                    () -> processPackageType(packageType, keptIds, deadline, resumable, session)))
+                    .toArray(CompletableFuture[]::new);
+            CompletableFuture.allOf(passes).join();
         } finally {
             span.end(); // closing the scope does not end the span, this has to be done manually
         }
     }
 
+    /**
+     * Loads the build groups of the package type from Indy and cleans them.
+     */
+    void processPackageType(
+            String packageType,
+            long[] keptIds,
+            Instant deadline,
+            boolean resumable,
+            FailedBuildsCleanerSession session) {
+        Timer.Sample sample = Timer.start(registry);
+        try {
+            logger.info("Loading list of existing {} repository groups from Indy.", packageType);
+            long[] allGroupIds = getGroupIds(packageType, session);
+            long[] groupIds = SortedIds.difference(allGroupIds, keptIds);
+            logger.info(
+                    "Skipping {} of {} {} groups of builds known to be kept.",
+                    allGroupIds.length - groupIds.length,
+                    allGroupIds.length,
+                    packageType);
+            registry.counter(className + ".kept.skipped.count", "packageType", packageType)
+                    .increment(allGroupIds.length - groupIds.length);
+
+            processGroups(packageType, groupIds, deadline, resumable, session);
+        } catch (RuntimeException e) {
+            errCounter.increment();
+            logger.error("Cleanup of " + packageType + " groups failed.", e);
+        } finally {
+            sample.stop(registry.timer(className + ".pass", "packageType", packageType));
+        }
+    }
+
+    /**
+     * Cleans the groups in chunks. A resumable run starts after the group the previous run stopped at, stops once the
+     * deadline passes and stores the id of the last processed group for the next run.
+     *
+     * @param groupIds sorted ids of the candidate groups
+     * @return true if all the groups were processed, false if the deadline passed
+     */
+    boolean processGroups(
+            String packageType,
+            long[] groupIds,
+            Instant deadline,
+            boolean resumable,
+            FailedBuildsCleanerSession session) {
+        int start = 0;
+        if (resumable) {
+            Long cursor = self.loadCursor(packageType);
+            if (cursor != null) {
+                int index = Arrays.binarySearch(groupIds, cursor);
+                start = index >= 0 ? index + 1 : -index - 1;
+                logger.info("Continuing the {} cleanup of the previous run, skipping {} groups.", packageType, start);
+            }
+        }
+
+        // group names are created only for the chunk being cleaned
+        int chunkSize = pncBatchSize > 1 ? pncBatchSize : DEFAULT_CHUNK_SIZE;
+        for (int i = start; i < groupIds.length; i += chunkSize) {
+            if (resumable) {
+                getBacklog(packageType).set(groupIds.length - i);
+            }
+            if (Instant.now().isAfter(deadline)) {
+                logger.info(
+                        "Time budget of the cleanup is spent, {} {} groups are left for the next run.",
+                        groupIds.length - i,
+                        packageType);
+                return false;
+            }
+            int end = Math.min(i + chunkSize, groupIds.length);
+            cleanBuildsIfNeeded(packageType, toGroupNames(groupIds, i, end), session);
+            if (resumable) {
+                self.saveCursor(packageType, groupIds[end - 1]);
+            }
+        }
+        if (resumable) {
+            getBacklog(packageType).set(0);
+            self.saveCursor(packageType, null);
+        }
+        return true;
+    }
+
+    private AtomicLong getBacklog(String packageType) {
+        return backlogs.computeIfAbsent(
+                packageType,
+                type -> registry.gauge(className + ".backlog", Tags.of("packageType", type), new AtomicLong()));
+    }
+
+    /**
+     * @return id of the last group processed by an unfinished run or null if the last run finished
+     */
+    @Transactional
+    Long loadCursor(String packageType) {
+        FailedBuildsCleanerCursor cursor = FailedBuildsCleanerCursor.findById(packageType);
+        return cursor == null ? null : cursor.lastBuildRecordId;
+    }
+
+    /**
+     * Stores the id of the last processed group, null marks the run as finished.
+     */
+    @Transactional
+    void saveCursor(String packageType, Long lastBuildRecordId) {
+        FailedBuildsCleanerCursor cursor = FailedBuildsCleanerCursor.findById(packageType);
+        if (lastBuildRecordId == null) {
+            if (cursor != null) {
+                cursor.delete();
+            }
+            return;
+        }
+        if (cursor == null) {
+            cursor = new FailedBuildsCleanerCursor();
+            cursor.packageType = packageType;
+            cursor.lastBuildRecordId = lastBuildRecordId;
+            cursor.updatedTime = Instant.now();
+            cursor.persist();
+        } else {
+            cursor.lastBuildRecordId = lastBuildRecordId;
+            cursor.updatedTime = Instant.now();
+        }
+    }
+
+    /**
+     * Cleans the given groups by the configured number of workers. With batching enabled the build records of all the
+     * groups are loaded by a single query first.
+     */
+    void cleanBuildsIfNeeded(String packageType, List<String> groupNames, FailedBuildsCleanerSession session) {
+        Map<String, Build> builds = null;
+        if (pncBatchSize > 1) {
+            try {
+                builds = getBuildRecords(groupNames);
+            } catch (CleanerException ex) {
+                logger.error("Error loading build records in batch, resolving them one by one.", ex);
+            }
+        }
+        if (builds == null) {
+            runConcurrently(groupNames, groupName -> cleanBuildIfNeeded(packageType, groupName, session));
+        } else {
+            Map<String, Build> loaded = builds;
+            runConcurrently(
+                    groupNames,
+                    groupName -> cleanBuildIfNeeded(packageType, groupName, loaded.get(groupName), session));
+        }
+        storeKeptBuilds(session);
+    }
+
+    /**
+     * Stores the decisions to keep groups made since the last call, so the groups are skipped on the next runs. A
+     * planning session only collects them, they are stored when the plan is executed.
+     */
+    void storeKeptBuilds(FailedBuildsCleanerSession session) {
+        List<Build> keptBuilds = session.drainKeptBuilds();
+        if (keptBuilds.isEmpty()) {
+            return;
+        }
+        if (session.getPlannedKeptGroups() != null) {
+            keptBuilds.forEach(build -> session.getPlannedKeptGroups().add(PlannedKeptGroup.of(build)));
+            return;
+        }
+        try {
+            keptBuildGroups.keep(keptBuilds);
+        } catch (RuntimeException e) {
+            // the groups will only be checked in PNC again on the next run
+            errCounter.increment();
+            logger.error("Failed to store decisions to keep groups of " + keptBuilds.size() + " builds.", e);
+        }
+    }
+
+    /**
+     * Runs the task for each item, at most {@link #concurrency} of them at a time, and waits for all of them to finish.
+     * With concurrency 1 the items are processed one by one in the calling thread.
+     */
+    <T> void runConcurrently(Collection<T> items, Consumer<T> task) {
+        if (concurrency <= 1) {
+            items.forEach(task);
+            return;
+        }
+        Semaphore permits = new Semaphore(concurrency);
+        for (T item : items) {
+            permits.acquireUninterruptibly();
+            executor.runAsync(() -> task.accept(item)).whenComplete((result, error) -> {
+                if (error != null) {
+                    errCounter.increment();
+                    logger.error("Cleanup of " + item + " failed.", error);
+                }
+                permits.release();
+            });
+        }
+        permits.acquireUninterruptibly(concurrency);
+    }
+
+    /**
+     * Creates a session using the shared Indy client, a new rate limiter for its requests and the Indy client metrics.
+     */
+    private FailedBuildsCleanerSession createSession(Instant limit) {
+        return new FailedBuildsCleanerSession(
+                getSharedIndy(),
+                limit,
+                new RateLimiter(indyMaxRequestsPerSecond),
+                indyMetrics);
+    }
+
+    /**
+     * Returns the Indy client shared by all the runs and their workers. It is created on the first use and closed
+     * with the bean. The client takes a fresh service account token for each request, so it outlives the tokens and
+     * its pooled connections are reused across runs.
+     */
+    synchronized Indy getSharedIndy() {
+        if (sharedIndy == null) {
+            logger.info("Initializing shared Indy client.");
+            // the client serves the later runs as well, so the trace headers are taken from each request's thread
+            sharedIndy = createIndy(
+                    new RefreshingBearerTokenAuthenticator(pncClientAuth::getAuthToken, new CurrentTraceInterceptor()),
+                    false);
+        }
+        return sharedIndy;
+    }
+
+    @PreDestroy
+    synchronized void closeSharedIndy() {
+        if (sharedIndy != null) {
+            try {
+                sharedIndy.close();
+            } catch (Exception e) {
+                logger.warn("Failed to close Indy client.", e);
+            }
+            sharedIndy = null;
+        }
+    }
+
     /**
      * Initializes Indy client with given access token.
      *
@@ -208,11 +767,15 @@ public class FailedBuildsCleaner {
             logger.info("Creating Indy authenticator.");
             authenticator = new OAuth20BearerTokenAuthenticator(accessToken);
         }
+        return createIndy(authenticator, true);
+    }
+
+    private Indy createIndy(IndyClientAuthenticator authenticator, boolean copyCurrentTrace) {
         try {
             SiteConfigBuilder siteConfigBuilder = new SiteConfigBuilder("indy", indyUrl)
                     .withRequestTimeoutSeconds(indyRequestTimeout)
-                    // this client is used in single thread, we don't need more than 1 connection at a time
-                    .withMaxConnections(1)
+                    // one connection for each cleanup worker of every package type pass
+                    .withMaxConnections(Math.max(concurrency, 1) * Math.max(packageTypes.size(), 1))
                     .withMetricEnabled(indyClientMetricsEnabled);
             if (indyClientMetricsEnabled) {
                 if (indyClientMetricsHoneycombDataset.isPresent()) {
@@ -232,19 +795,21 @@ public class FailedBuildsCleaner {
                     new IndyFoloContentClientModule() };
 
             Map<String, String> mdcCopyMappings = new HashMap<>(); // TODO fill in these if needed
-            SpanContext spanContext = Span.current().getSpanContext();
-            mdcCopyMappings.put(MDCHeaderKeys.TRACE_ID.getHeaderName(), spanContext.getTraceId());
-            mdcCopyMappings.put(MDCHeaderKeys.SPAN_ID.getHeaderName(), spanContext.getSpanId());
-            OtelUtils.createTraceStateHeader(spanContext).forEach((k, v) -> {
-                if (!Strings.isEmpty(v)) {
-                    mdcCopyMappings.put(k, v);
-                }
-            });
-            OtelUtils.createTraceParentHeader(spanContext).forEach((k, v) -> {
-                if (!Strings.isEmpty(v)) {
-                    mdcCopyMappings.put(k, v);
-                }
-            });
+            if (copyCurrentTrace) {
+                SpanContext spanContext = Span.current().getSpanContext();
+                mdcCopyMappings.put(MDCHeaderKeys.TRACE_ID.getHeaderName(), spanContext.getTraceId());
+                mdcCopyMappings.put(MDCHeaderKeys.SPAN_ID.getHeaderName(), spanContext.getSpanId());
+                OtelUtils.createTraceStateHeader(spanContext).forEach((k, v) -> {
+                    if (!Strings.isEmpty(v)) {
+                        mdcCopyMappings.put(k, v);
+                    }
+                });
+                OtelUtils.createTraceParentHeader(spanContext).forEach((k, v) -> {
+                    if (!Strings.isEmpty(v)) {
+                        mdcCopyMappings.put(k, v);
+                    }
+                });
+            }
             return new Indy(siteConfig, authenticator, new IndyObjectMapper(true), mdcCopyMappings, modules);
         } catch (IndyClientException e) {
             errCounter.increment();
@@ -253,19 +818,30 @@ public class FailedBuildsCleaner {
     }
 
     /**
-     * Loads Maven build group names from Indy.
+     * Loads build group names from Indy.
      *
      * @param session initialized Indy client, cannot be <code>null</code>
      *
      * @return the loaded list of group names, can be empty, never <code>null</code>
      */
-    @Timed
     List<String> getGroupNames(String packageType, FailedBuildsCleanerSession session) {
-        IndyStoresClientModule indyStores = session.getStores();
+        long[] groupIds = getGroupIds(packageType, session);
+        return toGroupNames(groupIds, 0, groupIds.length);
+    }
 
+    /**
+     * Loads build groups from Indy and decodes the build ids from their names. Only the sorted ids are kept, which
+     * takes a fraction of the memory of the group names.
+     *
+     * @param session initialized Indy client, cannot be <code>null</code>
+     *
+     * @return sorted ids of builds having a group in Indy, can be empty, never <code>null</code>
+     */
+    @Timed
+    long[] getGroupIds(String packageType, FailedBuildsCleanerSession session) {
         List<Group> groups;
         try {
-            StoreListingDTO<Group> groupsListing = indyStores.listGroups(packageType);
+            StoreListingDTO<Group> groupsListing = session.getIndy().listGroups(packageType);
             if (groupsListing == null) {
                 errCounter.increment();
                 throw new RuntimeException(
@@ -276,10 +852,89 @@ public class FailedBuildsCleaner {
             errCounter.increment();
             throw new RuntimeException("Error getting Maven group list from Indy: " + e.toString(), e);
         }
-        List<String> result = groups.stream()
-                .map(g -> g.getName())
-                .filter(n -> INDY_BUILD_GROUP_PATTERN.matcher(n).matches())
-                .collect(Collectors.toList());
+        return decodeBuildIds(packageType, groups, ArtifactStore::getName, INDY_BUILD_GROUP_PATTERN);
+    }
+
+    /**
+     * Loads hosted repositories from Indy and decodes the build ids from their names.
+     *
+     * @return sorted ids of builds having a hosted repository in Indy, can be empty, never <code>null</code>
+     */
+    long[] getHostedIds(String packageType, FailedBuildsCleanerSession session) {
+        List<HostedRepository> repositories;
+        try {
+            StoreListingDTO<HostedRepository> listing = session.getIndy().listHostedRepositories(packageType);
+            if (listing == null) {
+                errCounter.increment();
+                throw new RuntimeException(
+                        "Error getting " + packageType + " hosted repository list from Indy. The result was empty.");
+            }
+            repositories = listing.getItems();
+        } catch (IndyClientException e) {
+            errCounter.increment();
+            throw new RuntimeException(
+                    "Error getting " + packageType + " hosted repository list from Indy: " + e.toString(),
+                    e);
+        }
+        return decodeBuildIds(packageType, repositories, ArtifactStore::getName, INDY_BUILD_GROUP_PATTERN);
+    }
+
+    /**
+     * Decodes the build ids from the names of generic http groups loaded by the session.
+     *
+     * @return sorted distinct ids of builds having a generic http group in Indy, can be empty, never <code>null</code>
+     */
+    long[] getGenericGroupIds(FailedBuildsCleanerSession session) {
+        return decodeBuildIds(
+                GENERIC_PKG_KEY,
+                session.getGenericGroups(),
+                ArtifactStore::getName,
+                GENERIC_BUILD_GROUP_PATTERN);
+    }
+
+    /**
+     * Decodes the build ids straight from the names of the items matching the pattern into a growing array, no
+     * intermediate collection of the names is created.
+     *
+     * @return sorted distinct build ids decoded from the names matching the pattern
+     */
+    private <T> long[] decodeBuildIds(
+            String packageType,
+            Collection<T> items,
+            Function<T, String> nameOf,
+            Pattern pattern) {
+        long[] ids = new long[16];
+        int count = 0;
+        for (T item : items) {
+            String name = nameOf.apply(item);
+            Matcher matcher = pattern.matcher(name);
+            if (!matcher.matches()) {
+                continue;
+            }
+            long id;
+            try {
+                id = LongBase32IdConverter.toLong(matcher.group(1));
+            } catch (IllegalArgumentException e) {
+                errCounter.increment();
+                logger.error("Unable to decode build id of {} store {}. Skipping.", packageType, name);
+                continue;
+            }
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, count * 2);
+            }
+            ids[count++] = id;
+        }
+        return SortedIds.sortDistinct(ids, count);
+    }
+
+    /**
+     * Creates group names for the build ids in the given range of the array.
+     */
+    static List<String> toGroupNames(long[] groupIds, int from, int to) {
+        List<String> result = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            result.add(BUILD_GROUP_PREFIX + LongBase32IdConverter.toString(groupIds[i]));
+        }
         return result;
     }
 
@@ -295,37 +950,53 @@ public class FailedBuildsCleaner {
     void cleanBuildIfNeeded(String packageType, String groupName, FailedBuildsCleanerSession session) {
         logger.info("Loading build record for group {}.", groupName);
         try {
-            boolean clean = shouldClean(packageType, groupName, session);
+            cleanBuildIfNeeded(packageType, groupName, getBuildRecord(groupName), session);
+        } catch (CleanerException ex) {
+            errCounter.increment();
+            logger.error("Error loading build record for group " + groupName + ". Skipping.", ex);
+        }
+    }
 
-            if (clean) {
-                logger.info("Cleaning {} repositories for {}.", packageType, groupName);
-                IndyStoresClientModule stores = session.getStores();
-                try {
-                    // delete the content
-                    logger.info("Cleaning {} group and hosted repository {}.", packageType, groupName);
-                    deleteGroupAndHostedRepo(packageType, groupName, stores);
-
-                    logger.info("Searching for generic-http stores for {}.", groupName);
-                    List<StoreKey> genericRepos = findGenericRepos(groupName, session);
-                    for (StoreKey genericRepo : genericRepos) {
-                        stores.delete(genericRepo, "Scheduled cleanup of failed builds.");
-                    }
+    /**
+     * Does the same as {@link #cleanBuildIfNeeded(String, String, FailedBuildsCleanerSession)} with the build record
+     * already loaded.
+     *
+     * @param groupName the potentially cleaned group name
+     * @param build the build record matching the group or null if there is none
+     * @param session cleaner session
+     */
+    void cleanBuildIfNeeded(String packageType, String groupName, Build build, FailedBuildsCleanerSession session) {
+        boolean clean = shouldClean(packageType, groupName, build, session);
+        if (!clean && keptBuildGroups.isEnabled() && keptBuildGroups.isFinal(build, failedStatuses)) {
+            session.addKeptBuild(build);
+        }
 
-                    // delete the tracking record - mostly not needed, only in case the build failed in
-                    // promotion phase and the tracking report was already sealed
-                    IndyFoloAdminClientModule foloAdmin = session.getFoloAdmin();
-                    logger.info("Cleaning tracking record {} (if present).", groupName);
-                    foloAdmin.clearTrackingRecord(groupName);
-                } catch (IndyClientException e) {
-                    errCounter.increment();
-                    String description = MessageFormat.format("Failed to perform cleanups in Indy for %s", groupName);
-                    logger.error(description, e);
+        if (clean) {
+            logger.info("Cleaning {} repositories for {}.", packageType, groupName);
+            try {
+                logger.info("Searching for generic-http stores for {}.", groupName);
+                List<StoreKey> genericRepos = findGenericRepos(groupName, session);
+
+                if (session.getPlannedCleanups() != null) {
+                    logger.info("Planning cleanup of {} stores for {}.", genericRepos.size() + 2, groupName);
+                    List<String> genericStores = genericRepos.stream()
+                            .map(StoreKey::toString)
+                            .collect(Collectors.toList());
+                    session.getPlannedCleanups().add(new PlannedIndyCleanup(packageType, groupName, genericStores));
+                    return;
                 }
+                logger.info(
+                        "Cleaning {} group and hosted repository {}, {} generic-http stores and tracking record.",
+                        packageType,
+                        groupName,
+                        genericRepos.size());
+                deleteBuildStores(packageType, groupName, genericRepos, session.getIndy());
+                registry.counter(className + ".cleaned.count", "packageType", packageType).increment();
+            } catch (IndyClientException e) {
+                errCounter.increment();
+                String description = MessageFormat.format("Failed to perform cleanups in Indy for %s", groupName);
+                logger.error(description, e);
             }
-        } catch (CleanerException ex) {
-            errCounter.increment();
-            logger.error("Error loading build record for group " + groupName + ". Skipping.", ex);
-            ;
         }
     }
 
@@ -342,7 +1013,10 @@ public class FailedBuildsCleaner {
     @Timed
     boolean shouldClean(String packageType, String groupName, FailedBuildsCleanerSession session)
             throws CleanerException {
-        Build build = getBuildRecord(groupName);
+        return shouldClean(packageType, groupName, getBuildRecord(groupName), session);
+    }
+
+    boolean shouldClean(String packageType, String groupName, Build build, FailedBuildsCleanerSession session) {
         boolean clean = false;
         if (build == null) {
             warnCounter.increment();
@@ -378,22 +1052,15 @@ public class FailedBuildsCleaner {
     /**
      * Finds storeKeys of repos matching the pattern used to store repos for generic http downloads. It finds groups
      * matching the pattern for given buildContentId and collects their keys along with keys of their constituents,
-     * which are always a source remote repo and hosted repo to backup the downloaded binaries.
+     * which are always a source remote repo and hosted repo to backup the downloaded binaries. The lookup uses the
+     * index built by the session when it loads the generic groups.
      *
      * @param buildContentId the build content ID
      * @return the list of matching store keys, might be empty, never null
      */
     @Timed
     List<StoreKey> findGenericRepos(String buildContentId, FailedBuildsCleanerSession session) {
-        List<StoreKey> result = new ArrayList<>();
-        for (Group genericGroup : session.getGenericGroups()) {
-            if (genericGroup.getName().startsWith("g-") && genericGroup.getName().endsWith("-" + buildContentId)) {
-                result.add(genericGroup.getKey());
-                result.addAll(genericGroup.getConstituents());
-            }
-        }
-
-        return result;
+        return session.findGenericRepos(buildContentId);
     }
 
     /**
@@ -451,26 +1118,116 @@ public class FailedBuildsCleaner {
     }
 
     /**
-     * Deletes the build hosted repository and repo group from Indy if it exists.
+     * Loads build records from PNC for the given buildContentIds by a single query. The ones not found by
+     * buildContentId are looked up by the id parsed from the buildContentId, again by a single query. The same as
+     * {@link #getBuildRecord(String)} does for one build, ids matched by multiple build records or not found at all
+     * are mapped to null.
      *
-     * @param pkgKey package key
-     * @param repoName repository name
-     * @param stores Indy stores client module
+     * @param buildContentIds ids of the wanted builds
+     * @return map of each given buildContentId to the found build record or null
+     */
+    @Timed
+    Map<String, Build> getBuildRecords(Collection<String> buildContentIds) throws CleanerException {
+        Map<String, Build> result = new HashMap<>();
+        Map<String, List<Build>> byContentId = new HashMap<>();
+        for (Build build : queryBuilds("buildContentId=in=(" + String.join(",", buildContentIds) + ")")) {
+            byContentId.computeIfAbsent(build.getBuildContentId(), k -> new ArrayList<>()).add(build);
+        }
+
+        Map<String, String> idsToResolve = new HashMap<>();
+        for (String buildContentId : buildContentIds) {
+            List<Build> builds = byContentId.getOrDefault(buildContentId, List.of());
+            if (builds.size() > 1) {
+                errCounter.increment();
+                logger.error("Multiple build records found for buildContentId = {}", buildContentId);
+                result.put(buildContentId, null);
+            } else if (builds.size() == 1) {
+                result.put(buildContentId, builds.get(0));
+            } else {
+                warnCounter.increment();
+                logger.warn("Build record NOT found for buildContentId = {}", buildContentId);
+                Matcher matcher = INDY_BUILD_GROUP_PATTERN.matcher(buildContentId);
+                if (matcher.matches()) {
+                    idsToResolve.put(matcher.group(1), buildContentId);
+                } else {
+                    errCounter.increment();
+                    logger.error("Unable to parse buildContentId \"{}\"", buildContentId);
+                }
+                result.put(buildContentId, null);
+            }
+        }
+
+        if (!idsToResolve.isEmpty()) {
+            logger.info("Attempting to find {} build records by id", idsToResolve.size());
+            for (Build build : queryBuilds("id=in=(" + String.join(",", idsToResolve.keySet()) + ")")) {
+                String buildContentId = idsToResolve.remove(build.getId());
+                if (buildContentId != null) {
+                    result.put(buildContentId, build);
+                }
+            }
+            for (String id : idsToResolve.keySet()) {
+                warnCounter.increment();
+                logger.warn("Build record NOT found even by ID = {}", id);
+            }
+        }
+        return result;
+    }
+
+    private Collection<Build> queryBuilds(String query) throws CleanerException {
+        logger.info("Looking for build records with query \"{}\"", query);
+        try {
+            List<Build> builds = new ArrayList<>();
+            buildClient.getAll(null, null, Optional.empty(), Optional.of(query)).forEach(builds::add);
+            return builds;
+        } catch (RemoteResourceException e) {
+            errCounter.increment();
+            throw new CleanerException("Error when getting build records [status=%d].", e, e.getStatus());
+        }
+    }
+
+    /**
+     * Deletes everything the build left in Indy. Deletes are sent without checking the existence of the stores first,
+     * a store which is already gone counts as deleted. Groups are deleted together with the tracking record before
+     * the repositories they contain. The deletes are sent one by one by the calling worker, it runs on the managed
+     * executor already and waiting there for nested tasks could starve the pool, the parallelism comes from the
+     * workers.
+     *
+     * @param pkgKey package key of the build group and hosted repo
+     * @param repoName name of the build group and hosted repo, also the tracking id
+     * @param genericRepos generic-http groups of the build along with their constituents
+     * @param indy rate limited Indy operations
      * @throws IndyClientException in case of an error happening in Indy
      */
     @Timed
-    void deleteGroupAndHostedRepo(String pkgKey, String repoName, IndyStoresClientModule stores)
+    void deleteBuildStores(String pkgKey, String repoName, List<StoreKey> genericRepos, IndyOperations indy)
             throws IndyClientException {
-        StoreKey groupKey = new StoreKey(pkgKey, StoreType.group, repoName);
-        if (stores.exists(groupKey)) {
-            logger.debug("{} group {} exists - deleting...", pkgKey, repoName);
-            stores.delete(groupKey, "Scheduled cleanup of failed builds.");
+        deleteIfExists(new StoreKey(pkgKey, StoreType.group, repoName), indy);
+        deleteGenericStores(genericRepos, true, indy);
+        // delete the tracking record - mostly not needed, only in case the build failed in
+        // promotion phase and the tracking report was already sealed
+        indy.clearTrackingRecordIfExists(repoName);
+
+        deleteIfExists(new StoreKey(pkgKey, StoreType.hosted, repoName), indy);
+        deleteGenericStores(genericRepos, false, indy);
+    }
+
+    /**
+     * Deletes either the generic-http groups or the other generic-http stores from the given ones.
+     */
+    private void deleteGenericStores(List<StoreKey> genericRepos, boolean groups, IndyOperations indy)
+            throws IndyClientException {
+        for (StoreKey genericRepo : genericRepos) {
+            if ((genericRepo.getType() == StoreType.group) == groups) {
+                deleteIfExists(genericRepo, indy);
+            }
         }
+    }
 
-        StoreKey storeKey = new StoreKey(pkgKey, StoreType.hosted, repoName);
-        if (stores.exists(storeKey)) {
-            logger.debug("{} hosted repo {} exists - deleting...", pkgKey, repoName);
-            stores.delete(storeKey, "Scheduled cleanup of failed builds.");
+    private void deleteIfExists(StoreKey key, IndyOperations indy) throws IndyClientException {
+        if (indy.deleteIfExists(key, "Scheduled cleanup of failed builds.")) {
+            logger.debug("{} deleted.", key);
+        } else {
+            logger.debug("{} doesn't exist.", key);
         }
     }
 }
@@ -0,0 +1,45 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.builds;
+
+import io.quarkus.hibernate.orm.panache.PanacheEntityBase;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import java.time.Instant;
+
+/**
+ * Id of the last build group processed by an unfinished run of {@link FailedBuildsCleaner} for a package type. The
+ * next run continues with the following groups.
+ */
+@Table(name = "_failed_builds_cleaner_cursors")
+@Entity
+public class FailedBuildsCleanerCursor extends PanacheEntityBase {
+
+    @Id
+    @Column(name = "package_type", length = 20)
+    String packageType;
+
+    @Column(name = "last_buildrecord_id", nullable = false)
+    long lastBuildRecordId;
+
+    @Column(name = "updated_time", nullable = false)
+    Instant updatedTime;
+}
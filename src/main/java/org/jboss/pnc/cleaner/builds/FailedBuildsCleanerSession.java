@@ -22,14 +22,19 @@ import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
 import org.commonjava.indy.client.core.Indy;
 import org.commonjava.indy.client.core.IndyClientException;
-import org.commonjava.indy.client.core.module.IndyStoresClientModule;
-import org.commonjava.indy.folo.client.IndyFoloAdminClientModule;
 import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.model.core.dto.StoreListingDTO;
+import org.jboss.pnc.dto.Build;
 
 import jakarta.inject.Inject;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import static org.commonjava.indy.model.core.GenericPackageTypeDescriptor.GENERIC_PKG_KEY;
 
@@ -37,29 +42,61 @@ public class FailedBuildsCleanerSession {
 
     private static final String className = FailedBuildsCleanerSession.class.getName();
 
-    private IndyFoloAdminClientModule foloAdmin;
-    private IndyStoresClientModule stores;
+    private static final String BUILD_PREFIX = "build";
+
+    private final IndyOperations indy;
 
     private List<Group> genericGroups;
 
+    /**
+     * Generic http group keys with their constituents indexed by every suffix of the group name starting with "build"
+     * right after a dash, i.e. by every buildContentId the group name could end with.
+     */
+    private Map<String, List<StoreKey>> genericReposByBuildContentId;
+
     private Instant to;
 
+    /** Cleanups collected instead of being done, null if the session deletes the content. */
+    private Queue<PlannedIndyCleanup> plannedCleanups;
+
+    /** Decisions to keep groups collected instead of being stored, null if the session stores them. */
+    private Queue<PlannedKeptGroup> plannedKeptGroups;
+
+    /** Builds whose groups were decided to be kept for good and the decision is not stored yet. */
+    private final Queue<Build> keptBuilds = new ConcurrentLinkedQueue<>();
+
     public FailedBuildsCleanerSession(Indy indyClient, Instant to) {
+        this(indyClient, to, RateLimiter.unlimited());
+    }
+
+    public FailedBuildsCleanerSession(Indy indyClient, Instant to, RateLimiter rateLimiter) {
+        this(indyClient, to, rateLimiter, IndyClientMetrics.disabled());
+    }
+
+    public FailedBuildsCleanerSession(
+            Indy indyClient,
+            Instant to,
+            RateLimiter rateLimiter,
+            IndyClientMetrics indyMetrics) {
         try {
-            this.stores = indyClient.stores();
-            this.foloAdmin = indyClient.module(IndyFoloAdminClientModule.class);
+            this.indy = new IndyOperations(indyClient, rateLimiter, indyMetrics);
         } catch (IndyClientException e) {
             throw new RuntimeException("Unable to retrieve Indy client module: " + e, e);
         }
         this.to = to;
     }
 
+    /**
+     * Loads the generic http groups once per session. Synchronized because the session is shared by the cleanup
+     * workers.
+     */
     @Timed
-    public List<Group> getGenericGroups() {
+    public synchronized List<Group> getGenericGroups() {
         if (genericGroups == null) {
             try {
-                StoreListingDTO<Group> groupListing = stores.listGroups(GENERIC_PKG_KEY);
+                StoreListingDTO<Group> groupListing = indy.listGroups(GENERIC_PKG_KEY);
                 genericGroups = groupListing.getItems();
+                genericReposByBuildContentId = indexGenericRepos(genericGroups);
             } catch (IndyClientException e) {
                 throw new RuntimeException("Error in loading generic http groups: " + e, e);
             }
@@ -67,16 +104,81 @@ public class FailedBuildsCleanerSession {
         return genericGroups;
     }
 
-    public IndyFoloAdminClientModule getFoloAdmin() {
-        return foloAdmin;
+    /**
+     * Finds keys of generic http groups named "g-...-&lt;buildContentId&gt;" along with keys of their constituents.
+     *
+     * @param buildContentId the build content ID
+     * @return the list of matching store keys, might be empty, never null
+     */
+    public List<StoreKey> findGenericRepos(String buildContentId) {
+        List<Group> groups = getGenericGroups();
+        if (buildContentId.startsWith(BUILD_PREFIX)) {
+            return genericReposByBuildContentId.getOrDefault(buildContentId, List.of());
+        }
+
+        List<StoreKey> result = new ArrayList<>();
+        for (Group genericGroup : groups) {
+            if (genericGroup.getName().startsWith("g-") && genericGroup.getName().endsWith("-" + buildContentId)) {
+                result.add(genericGroup.getKey());
+                result.addAll(genericGroup.getConstituents());
+            }
+        }
+        return result;
     }
 
-    public IndyStoresClientModule getStores() {
-        return stores;
+    private static Map<String, List<StoreKey>> indexGenericRepos(List<Group> groups) {
+        Map<String, List<StoreKey>> index = new HashMap<>();
+        for (Group group : groups) {
+            String name = group.getName();
+            if (!name.startsWith("g-")) {
+                continue;
+            }
+            for (int i = name.indexOf("-" + BUILD_PREFIX); i >= 0; i = name.indexOf("-" + BUILD_PREFIX, i + 1)) {
+                List<StoreKey> keys = index.computeIfAbsent(name.substring(i + 1), k -> new ArrayList<>());
+                keys.add(group.getKey());
+                keys.addAll(group.getConstituents());
+            }
+        }
+        return index;
+    }
+
+    public IndyOperations getIndy() {
+        return indy;
     }
 
     public Instant getTo() {
         return to;
     }
 
+    public Queue<PlannedIndyCleanup> getPlannedCleanups() {
+        return plannedCleanups;
+    }
+
+    public void setPlannedCleanups(Queue<PlannedIndyCleanup> plannedCleanups) {
+        this.plannedCleanups = plannedCleanups;
+    }
+
+    public Queue<PlannedKeptGroup> getPlannedKeptGroups() {
+        return plannedKeptGroups;
+    }
+
+    public void setPlannedKeptGroups(Queue<PlannedKeptGroup> plannedKeptGroups) {
+        this.plannedKeptGroups = plannedKeptGroups;
+    }
+
+    public void addKeptBuild(Build build) {
+        keptBuilds.add(build);
+    }
+
+    /**
+     * @return the builds added since the last call
+     */
+    public List<Build> drainKeptBuilds() {
+        List<Build> result = new ArrayList<>();
+        for (Build build = keptBuilds.poll(); build != null; build = keptBuilds.poll()) {
+            result.add(build);
+        }
+        return result;
+    }
+
 }
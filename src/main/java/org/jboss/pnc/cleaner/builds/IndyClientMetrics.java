@@ -0,0 +1,118 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.builds;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.commonjava.indy.client.core.IndyClientException;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Records the Indy calls into Micrometer: a latency histogram tagged by operation and outcome and a gauge of the calls
+ * in flight by operation. Operations are the fixed names used by {@link IndyOperations} and the outcome is reduced to
+ * a few classes of HTTP status, so the number of time series stays bounded.
+ */
+public class IndyClientMetrics {
+
+    private static final String className = IndyOperations.class.getName();
+
+    static final String SUCCESS = "success";
+    static final String NOT_FOUND = "not_found";
+    static final String CLIENT_ERROR = "client_error";
+    static final String SERVER_ERROR = "server_error";
+    static final String ERROR = "error";
+
+    private static final IndyClientMetrics DISABLED = new IndyClientMetrics(null);
+
+    /** Registry the metrics are recorded to, null if they are not recorded. */
+    private final MeterRegistry registry;
+
+    private final Map<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+
+    public IndyClientMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * @return metrics which don't record anything
+     */
+    public static IndyClientMetrics disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * Runs the Indy call and records its latency and outcome.
+     *
+     * @param operation name of the operation, one of a fixed set
+     */
+    <T> T record(String operation, Call<T> call) throws IndyClientException {
+        if (registry == null) {
+            return call.call();
+        }
+        AtomicInteger operationInFlight = getInFlight(operation);
+        operationInFlight.incrementAndGet();
+        Timer.Sample sample = Timer.start(registry);
+        String outcome = SUCCESS;
+        try {
+            return call.call();
+        } catch (IndyClientException e) {
+            outcome = outcome(e.getStatusCode());
+            throw e;
+        } catch (RuntimeException e) {
+            outcome = ERROR;
+            throw e;
+        } finally {
+            sample.stop(
+                    Timer.builder(className + ".calls")
+                            .tags("operation", operation, "outcome", outcome)
+                            .publishPercentileHistogram()
+                            .minimumExpectedValue(Duration.ofMillis(1))
+                            .maximumExpectedValue(Duration.ofMinutes(1))
+                            .register(registry));
+            operationInFlight.decrementAndGet();
+        }
+    }
+
+    private AtomicInteger getInFlight(String operation) {
+        return inFlight.computeIfAbsent(
+                operation,
+                op -> registry.gauge(className + ".inflight", Tags.of("operation", op), new AtomicInteger()));
+    }
+
+    static String outcome(int statusCode) {
+        if (statusCode == 404) {
+            return NOT_FOUND;
+        } else if (statusCode >= 400 && statusCode < 500) {
+            return CLIENT_ERROR;
+        } else if (statusCode >= 500) {
+            return SERVER_ERROR;
+        }
+        // no response, e.g. a connection failure or a timeout
+        return ERROR;
+    }
+
+    @FunctionalInterface
+    interface Call<T> {
+        T call() throws IndyClientException;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.builds;
+
+import org.commonjava.indy.client.core.Indy;
+import org.commonjava.indy.client.core.IndyClientException;
+import org.commonjava.indy.client.core.module.IndyStoresClientModule;
+import org.commonjava.indy.folo.client.IndyFoloAdminClientModule;
+import org.commonjava.indy.folo.dto.TrackingIdsDTO;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.HostedRepository;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.core.dto.StoreListingDTO;
+
+import jakarta.ws.rs.core.Response;
+import java.util.Set;
+
+/**
+ * Indy calls used by the cleaners. Every call waits for a permit of the rate limiter shared by all threads of the
+ * cleanup, so parallel workers don't overload Indy, and is recorded by the Indy client metrics.
+ */
+public class IndyOperations {
+
+    private final IndyStoresClientModule stores;
+
+    private final IndyFoloAdminClientModule foloAdmin;
+
+    private final RateLimiter rateLimiter;
+
+    private final IndyClientMetrics metrics;
+
+    public IndyOperations(Indy indyClient, RateLimiter rateLimiter) throws IndyClientException {
+        this(indyClient, rateLimiter, IndyClientMetrics.disabled());
+    }
+
+    public IndyOperations(Indy indyClient, RateLimiter rateLimiter, IndyClientMetrics metrics)
+            throws IndyClientException {
+        this.stores = indyClient.stores();
+        this.foloAdmin = indyClient.module(IndyFoloAdminClientModule.class);
+        this.rateLimiter = rateLimiter;
+        this.metrics = metrics;
+    }
+
+    public StoreListingDTO<Group> listGroups(String packageType) throws IndyClientException {
+        rateLimiter.acquire();
+        return metrics.record("listGroups", () -> stores.listGroups(packageType));
+    }
+
+    public StoreListingDTO<HostedRepository> listHostedRepositories(String packageType) throws IndyClientException {
+        rateLimiter.acquire();
+        return metrics.record("listHostedRepositories", () -> stores.listHostedRepositories(packageType));
+    }
+
+    public boolean exists(StoreKey key) throws IndyClientException {
+        rateLimiter.acquire();
+        return metrics.record("exists", () -> stores.exists(key));
+    }
+
+    public void delete(StoreKey key, String changelog) throws IndyClientException {
+        rateLimiter.acquire();
+        metrics.record("delete", () -> {
+            stores.delete(key, changelog);
+            return null;
+        });
+    }
+
+    /**
+     * Deletes the store without checking its existence first, a store which doesn't exist counts as deleted.
+     *
+     * @return true if the store was deleted, false if it didn't exist
+     */
+    public boolean deleteIfExists(StoreKey key, String changelog) throws IndyClientException {
+        try {
+            delete(key, changelog);
+            return true;
+        } catch (IndyClientException e) {
+            if (e.getStatusCode() == Response.Status.NOT_FOUND.getStatusCode()) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Clears the tracking record, a record which doesn't exist counts as cleared.
+     */
+    public void clearTrackingRecordIfExists(String trackingId) throws IndyClientException {
+        try {
+            clearTrackingRecord(trackingId);
+        } catch (IndyClientException e) {
+            if (e.getStatusCode() != Response.Status.NOT_FOUND.getStatusCode()) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * @return ids of the sealed tracking records, might be empty, never null
+     */
+    public Set<String> listSealedTrackingIds() throws IndyClientException {
+        rateLimiter.acquire();
+        TrackingIdsDTO trackingIds = metrics.record("getTrackingIds", () -> foloAdmin.getTrackingIds("sealed"));
+        return trackingIds == null || trackingIds.getSealed() == null ? Set.of() : trackingIds.getSealed();
+    }
+
+    public void clearTrackingRecord(String trackingId) throws IndyClientException {
+        rateLimiter.acquire();
+        metrics.record("clearTrackingRecord", () -> {
+            foloAdmin.clearTrackingRecord(trackingId);
+            return null;
+        });
+    }
+}
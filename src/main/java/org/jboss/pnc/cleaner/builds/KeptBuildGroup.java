@@ -0,0 +1,44 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.builds;
+
+import io.quarkus.hibernate.orm.panache.PanacheEntityBase;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import java.time.Instant;
+
+/**
+ * Build whose Indy groups the failed builds cleaner decided to keep, see {@link KeptBuildGroups}.
+ */
+@Table(name = "_kept_build_groups")
+@Entity
+public class KeptBuildGroup extends PanacheEntityBase {
+
+    @Id
+    @Column(name = "buildrecord_id")
+    long buildRecordId;
+
+    @Column(name = "status", length = 30, nullable = false)
+    String status;
+
+    @Column(name = "decision_time", nullable = false)
+    Instant decisionTime;
+}
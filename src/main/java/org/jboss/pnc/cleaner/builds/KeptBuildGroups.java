@@ -0,0 +1,116 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.builds;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.pnc.common.pnc.LongBase32IdConverter;
+import org.jboss.pnc.dto.Build;
+import org.jboss.pnc.enums.BuildProgress;
+import org.jboss.pnc.enums.BuildStatus;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.transaction.Transactional;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Persistent decisions of the failed builds cleaner to keep the Indy groups of a build. A finished persistent build
+ * which didn't fail never becomes a candidate for the cleanup, so its groups are skipped on the following runs without
+ * asking PNC. Each decision is trusted for the revalidation interval, after that the build is checked in PNC again and
+ * the decision is renewed.
+ */
+@ApplicationScoped
+public class KeptBuildGroups {
+
+    private static final String UPSERT = "INSERT INTO _kept_build_groups (buildrecord_id, status, decision_time) "
+            + "VALUES (:id, :status, :decisionTime) ON CONFLICT (buildrecord_id) "
+            + "DO UPDATE SET status = EXCLUDED.status, decision_time = EXCLUDED.decision_time";
+
+    /** Days after which a decision is validated in PNC again, zero or less disables the decisions. */
+    @ConfigProperty(name = "failedbuildscleaner.keptGroups.revalidateDays", defaultValue = "30")
+    int revalidateDays;
+
+    @Inject
+    EntityManager entityManager;
+
+    public boolean isEnabled() {
+        return revalidateDays > 0;
+    }
+
+    /**
+     * Tells if the decision to keep the build's groups is final, i.e. it would be the same on any later run.
+     * Temporary builds are excluded, they are eventually removed from PNC and their groups have to be cleaned then.
+     */
+    public boolean isFinal(Build build, Collection<?> failedStatuses) {
+        return build != null && Boolean.FALSE.equals(build.getTemporaryBuild())
+                && build.getProgress() == BuildProgress.FINISHED && build.getEndTime() != null
+                && !failedStatuses.contains(build.getStatus());
+    }
+
+    /**
+     * @return sorted ids of the builds with a decision younger than the revalidation interval
+     */
+    @Transactional
+    public long[] getValidIds() {
+        if (!isEnabled()) {
+            return new long[0];
+        }
+        List<Long> ids = entityManager
+                .createQuery(
+                        "SELECT k.buildRecordId FROM KeptBuildGroup k WHERE k.decisionTime >= :since "
+                                + "ORDER BY k.buildRecordId",
+                        Long.class)
+                .setParameter("since", Instant.now().minus(revalidateDays, ChronoUnit.DAYS))
+                .getResultList();
+        return ids.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * Stores or renews the decisions to keep the groups of the given builds.
+     */
+    @Transactional
+    public void keep(Collection<Build> builds) {
+        Instant now = Instant.now();
+        for (Build build : builds) {
+            upsert(build.getId(), build.getStatus(), now);
+        }
+    }
+
+    /**
+     * Stores or renews the decisions collected by a planning run.
+     */
+    @Transactional
+    public void keepPlanned(Collection<PlannedKeptGroup> keptGroups) {
+        Instant now = Instant.now();
+        for (PlannedKeptGroup keptGroup : keptGroups) {
+            upsert(keptGroup.getBuildId(), keptGroup.getStatus(), now);
+        }
+    }
+
+    private void upsert(String buildId, BuildStatus status, Instant decisionTime) {
+        entityManager.createNativeQuery(UPSERT)
+                .setParameter("id", LongBase32IdConverter.toLong(buildId))
+                .setParameter("status", status.name())
+                .setParameter("decisionTime", decisionTime)
+                .executeUpdate();
+    }
+}
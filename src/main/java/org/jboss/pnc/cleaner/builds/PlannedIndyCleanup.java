@@ -0,0 +1,57 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.builds;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.commonjava.indy.model.core.StoreKey;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Indy cleanup of one failed build found by the planning run of {@link FailedBuildsCleaner}. It consists of the build
+ * group and hosted repo, the generic-http stores of the build and its tracking record.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PlannedIndyCleanup {
+
+    private String packageType;
+
+    private String groupName;
+
+    /** Keys of the generic-http groups and their constituents in the {@link StoreKey#toString()} format. */
+    private List<String> genericStores;
+
+    @JsonIgnore
+    public List<StoreKey> getGenericStoreKeys() {
+        return genericStores.stream().map(StoreKey::fromString).collect(Collectors.toList());
+    }
+
+    /**
+     * @return number of Indy requests needed to execute the cleanup
+     */
+    public int estimateRequests() {
+        // build group, hosted repo and tracking record
+        return 3 + genericStores.size();
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.builds;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.jboss.pnc.dto.Build;
+import org.jboss.pnc.enums.BuildStatus;
+
+/**
+ * Decision to keep the Indy groups of a build made by the planning run of {@link FailedBuildsCleaner}. Planning doesn't
+ * write anything, the decision is stored in {@link KeptBuildGroups} when the plan is executed.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PlannedKeptGroup {
+
+    private String buildId;
+
+    private BuildStatus status;
+
+    public static PlannedKeptGroup of(Build build) {
+        return new PlannedKeptGroup(build.getId(), build.getStatus());
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.builds;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits the rate of requests shared by several threads. Permits are handed out at evenly spaced times, a thread
+ * asking for a permit before its time waits, so the rate is never exceeded even for a short burst.
+ */
+public class RateLimiter {
+
+    private final long intervalNanos;
+
+    private final LongSupplier clock;
+
+    private final Sleeper sleeper;
+
+    private long nextPermitNanos;
+
+    /**
+     * @param permitsPerSecond maximal number of permits per second, zero or less means no limit
+     */
+    public RateLimiter(double permitsPerSecond) {
+        this(permitsPerSecond, System::nanoTime, TimeUnit.NANOSECONDS::sleep);
+    }
+
+    /**
+     * @param clock source of the current time in nanoseconds
+     * @param sleeper waits for the given number of nanoseconds
+     */
+    RateLimiter(double permitsPerSecond, LongSupplier clock, Sleeper sleeper) {
+        this.intervalNanos = permitsPerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond) : 0;
+        this.clock = clock;
+        this.sleeper = sleeper;
+        this.nextPermitNanos = clock.getAsLong();
+    }
+
+    public static RateLimiter unlimited() {
+        return new RateLimiter(0);
+    }
+
+    /**
+     * Waits until a permit is available.
+     */
+    public void acquire() {
+        if (intervalNanos == 0) {
+            return;
+        }
+        long waitNanos;
+        synchronized (this) {
+            long now = clock.getAsLong();
+            // unused permits from idle periods are not accumulated
+            if (nextPermitNanos - now < 0) {
+                nextPermitNanos = now;
+            }
+            waitNanos = nextPermitNanos - now;
+            nextPermitNanos += intervalNanos;
+        }
+        if (waitNanos > 0) {
+            try {
+                sleeper.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for a request permit", e);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    interface Sleeper {
+        void sleep(long nanos) throws InterruptedException;
+    }
+}
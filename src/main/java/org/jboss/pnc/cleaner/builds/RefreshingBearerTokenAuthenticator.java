@@ -0,0 +1,62 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.builds;
+
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.protocol.HttpContext;
+import org.commonjava.indy.client.core.auth.IndyClientAuthenticator;
+import org.commonjava.util.jhttpc.JHttpCException;
+
+import java.util.function.Supplier;
+
+/**
+ * Indy authenticator adding a bearer token to each request. Unlike the OAuth20BearerTokenAuthenticator, which holds
+ * one token for the life of the client, the token is taken from the supplier for each request, so a long-lived client
+ * keeps working after the token it was created with expires. The supplier is expected to cache the token and refresh
+ * it when needed. Other per-request interceptors, e.g. the {@link CurrentTraceInterceptor}, can be installed along
+ * with it, the authenticator is the only hook of the Indy client into its HTTP client.
+ */
+public class RefreshingBearerTokenAuthenticator extends IndyClientAuthenticator implements HttpRequestInterceptor {
+
+    private static final String AUTHORIZATION_HEADER = "Authorization";
+
+    private final Supplier<String> tokenSupplier;
+
+    private final HttpRequestInterceptor[] interceptors;
+
+    public RefreshingBearerTokenAuthenticator(Supplier<String> tokenSupplier, HttpRequestInterceptor... interceptors) {
+        this.tokenSupplier = tokenSupplier;
+        this.interceptors = interceptors;
+    }
+
+    @Override
+    public HttpClientBuilder decorateClientBuilder(HttpClientBuilder builder) throws JHttpCException {
+        builder.addInterceptorFirst(this);
+        for (HttpRequestInterceptor interceptor : interceptors) {
+            builder.addInterceptorLast(interceptor);
+        }
+        return builder;
+    }
+
+    @Override
+    public void process(HttpRequest request, HttpContext context) {
+        request.setHeader(AUTHORIZATION_HEADER, "Bearer " + tokenSupplier.get());
+    }
+}
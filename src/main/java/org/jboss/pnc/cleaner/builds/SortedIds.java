@@ -0,0 +1,96 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.builds;
+
+import java.util.Arrays;
+
+/**
+ * Set operations on sorted arrays of distinct build ids. They run in linear time and don't box the ids, so even sets
+ * of hundreds of thousands of builds take only a few megabytes.
+ */
+public final class SortedIds {
+
+    private SortedIds() {
+    }
+
+    /**
+     * Sorts the ids and removes duplicates.
+     *
+     * @return sorted distinct ids, the given array might be reused
+     */
+    public static long[] sortDistinct(long[] ids) {
+        return sortDistinct(ids, ids.length);
+    }
+
+    /**
+     * Sorts the first <code>length</code> ids of the array in place and removes duplicates.
+     *
+     * @return sorted distinct ids, the given array might be reused
+     */
+    public static long[] sortDistinct(long[] ids, int length) {
+        Arrays.sort(ids, 0, length);
+        int count = 0;
+        for (int i = 0; i < length; i++) {
+            if (count == 0 || ids[count - 1] != ids[i]) {
+                ids[count++] = ids[i];
+            }
+        }
+        return count == ids.length ? ids : Arrays.copyOf(ids, count);
+    }
+
+    /**
+     * @return sorted ids from the first array, which are not in the second one
+     */
+    public static long[] difference(long[] sorted, long[] excluded) {
+        long[] result = new long[sorted.length];
+        int count = 0;
+        int j = 0;
+        for (long id : sorted) {
+            while (j < excluded.length && excluded[j] < id) {
+                j++;
+            }
+            if (j == excluded.length || excluded[j] != id) {
+                result[count++] = id;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * @return sorted ids which are in any of the arrays
+     */
+    public static long[] union(long[] first, long[] second) {
+        long[] result = new long[first.length + second.length];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < first.length || j < second.length) {
+            long id;
+            if (j == second.length || (i < first.length && first[i] < second[j])) {
+                id = first[i++];
+            } else if (i == first.length || second[j] < first[i]) {
+                id = second[j++];
+            } else {
+                id = first[i++];
+                j++;
+            }
+            result[count++] = id;
+        }
+        return Arrays.copyOf(result, count);
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.common;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Keeps the execution of a cleanup plan from running at the same time as the scheduled cleanups, which would delete
+ * the same builds and stores. The scheduled cleanups can still run at the same time as each other. The lock is held
+ * in this instance of the service only, the cleanups are scheduled in one instance.
+ */
+@ApplicationScoped
+public class CleanupLock {
+
+    private final Logger logger = LoggerFactory.getLogger(CleanupLock.class);
+
+    // not owned by a thread, a plan execution is started in one thread and finished in another
+    private final StampedLock lock = new StampedLock();
+
+    /**
+     * Runs the scheduled cleanup unless a cleanup plan is being executed.
+     *
+     * @param name name of the cleanup for the log
+     * @return false if the cleanup was skipped
+     */
+    public boolean runScheduled(String name, Runnable cleanup) {
+        long stamp = lock.tryReadLock();
+        if (stamp == 0) {
+            logger.info("A cleanup plan is being executed, skipping {}.", name);
+            return false;
+        }
+        try {
+            cleanup.run();
+            return true;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Locks out the scheduled cleanups and other plan executions.
+     *
+     * @return stamp to pass to {@link #unlockPlanExecution(long)}, 0 if a cleanup is running
+     */
+    public long tryLockPlanExecution() {
+        return lock.tryWriteLock();
+    }
+
+    public void unlockPlanExecution(long stamp) {
+        lock.unlockWrite(stamp);
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.plan;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.jboss.pnc.cleaner.builds.PlannedIndyCleanup;
+import org.jboss.pnc.cleaner.temporaryBuilds.PlannedBuildDeletion;
+
+import java.util.List;
+
+/**
+ * Counts of the items of a cleanup plan and the number of requests its execution takes.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CleanupEstimate {
+
+    private int indyStores;
+
+    private int trackingRecords;
+
+    private int groupBuilds;
+
+    private int builds;
+
+    private int archives;
+
+    private int finalLogs;
+
+    private long requests;
+
+    public static CleanupEstimate of(
+            List<PlannedIndyCleanup> indyCleanups,
+            List<String> groupBuildIds,
+            List<PlannedBuildDeletion> builds) {
+        CleanupEstimate estimate = new CleanupEstimate();
+        for (PlannedIndyCleanup cleanup : indyCleanups) {
+            // build group and hosted repo along with the generic-http stores
+            estimate.indyStores += 2 + cleanup.getGenericStores().size();
+            estimate.trackingRecords++;
+            estimate.requests += cleanup.estimateRequests();
+        }
+        estimate.groupBuilds = groupBuildIds.size();
+        estimate.requests += groupBuildIds.size();
+        for (PlannedBuildDeletion build : builds) {
+            estimate.builds++;
+            estimate.archives++;
+            estimate.finalLogs++;
+            estimate.requests += build.estimateRequests();
+        }
+        return estimate;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.plan;
+
+import io.quarkus.hibernate.orm.panache.PanacheEntityBase;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import java.time.Instant;
+
+/**
+ * Stored result of a planning run, see {@link CleanupPlanner}.
+ */
+@Table(name = "_cleanup_plans")
+@Entity
+public class CleanupPlan extends PanacheEntityBase {
+
+    public enum Status {
+        PLANNING, PLANNED, EXECUTING, EXECUTED, FAILED
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id")
+    Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", length = 20, nullable = false)
+    Status status;
+
+    @Column(name = "created_time", nullable = false)
+    Instant createdTime;
+
+    // builds of the failed builds cleaner started before are planned for cleanup
+    @Column(name = "failed_builds_limit", nullable = false)
+    Instant failedBuildsLimit;
+
+    // temporary builds created before are planned for deletion
+    @Column(name = "temporary_builds_threshold", nullable = false)
+    Instant temporaryBuildsThreshold;
+
+    @Column(name = "executed_time")
+    Instant executedTime;
+
+    // number of cleanups which failed during the execution
+    @Column(name = "failures")
+    Integer failures;
+
+    @Column(name = "content", columnDefinition = "jsonb", nullable = false)
+    @JdbcTypeCode(SqlTypes.JSON)
+    CleanupPlanContent content;
+}
@@ -0,0 +1,50 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.plan;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.jboss.pnc.cleaner.builds.PlannedIndyCleanup;
+import org.jboss.pnc.cleaner.builds.PlannedKeptGroup;
+import org.jboss.pnc.cleaner.temporaryBuilds.PlannedBuildDeletion;
+
+import java.util.List;
+
+/**
+ * Everything a cleanup plan would delete, along with the decisions to keep groups made while planning.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CleanupPlanContent {
+
+    /** Indy content of failed builds. */
+    private List<PlannedIndyCleanup> indyCleanups;
+
+    /** Ids of expired temporary BuildConfigSetRecords. */
+    private List<String> groupBuildIds;
+
+    /** Expired temporary builds with their archives and final logs. */
+    private List<PlannedBuildDeletion> builds;
+
+    /** Decisions to keep Indy groups of builds, null in plans created before they were collected. */
+    private List<PlannedKeptGroup> keptGroups;
+
+    private CleanupEstimate estimate;
+}
@@ -0,0 +1,56 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.plan;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Instant;
+
+/**
+ * Representation of {@link CleanupPlan} returned by the REST API.
+ */
+@Value
+@Builder
+public class CleanupPlanView {
+
+    Long id;
+    CleanupPlan.Status status;
+    Instant createdTime;
+    Instant failedBuildsLimit;
+    Instant temporaryBuildsThreshold;
+    Instant executedTime;
+    Integer failures;
+    CleanupEstimate estimate;
+    // omitted unless requested, a plan can list many thousands of items
+    CleanupPlanContent content;
+
+    static CleanupPlanView of(CleanupPlan plan, boolean includeContent) {
+        return CleanupPlanView.builder()
+                .id(plan.id)
+                .status(plan.status)
+                .createdTime(plan.createdTime)
+                .failedBuildsLimit(plan.failedBuildsLimit)
+                .temporaryBuildsThreshold(plan.temporaryBuildsThreshold)
+                .executedTime(plan.executedTime)
+                .failures(plan.failures)
+                .estimate(plan.content.getEstimate())
+                .content(includeContent ? plan.content : null)
+                .build();
+    }
+}
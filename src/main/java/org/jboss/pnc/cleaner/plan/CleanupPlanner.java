@@ -0,0 +1,351 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.plan;
+
+import io.micrometer.core.annotation.Timed;
+import io.quarkus.runtime.StartupEvent;
+import io.quarkus.scheduler.Scheduled;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.context.ManagedExecutor;
+import org.jboss.pnc.cleaner.common.CleanupLock;
+import org.jboss.pnc.cleaner.builds.FailedBuildsCleaner;
+import org.jboss.pnc.cleaner.builds.FailedBuildsPlan;
+import org.jboss.pnc.cleaner.temporaryBuilds.PlannedBuildDeletion;
+import org.jboss.pnc.cleaner.temporaryBuilds.TemporaryBuildsCleanerImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import jakarta.transaction.Transactional;
+import jakarta.ws.rs.ClientErrorException;
+import jakarta.ws.rs.NotFoundException;
+import jakarta.ws.rs.core.Response;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Splits the cleanups into a planning and an execution step. Planning finds everything {@link FailedBuildsCleaner}
+ * and {@link TemporaryBuildsCleanerImpl} would delete without deleting anything and stores it as a {@link CleanupPlan}
+ * with an estimate of the work. Executing a plan deletes the listed items in parallel without repeating the discovery
+ * queries. Both steps can be triggered by REST or run on their own schedules. A plan is not executed while the
+ * scheduled cleanups run, see {@link CleanupLock}.
+ */
+@ApplicationScoped
+public class CleanupPlanner {
+
+    private static final Logger logger = LoggerFactory.getLogger(CleanupPlanner.class);
+
+    @ConfigProperty(name = "failedbuildscleaner.retention")
+    Integer failedBuildsRetention;
+
+    /** Number of temporary builds deleted in parallel during the execution of a plan. */
+    @ConfigProperty(name = "cleanupPlanner.concurrency", defaultValue = "4")
+    int concurrency;
+
+    /** Plans older than this number of hours are not executed, they have to be created again. */
+    @ConfigProperty(name = "cleanupPlanner.maxPlanAge", defaultValue = "24")
+    int maxPlanAge;
+
+    @Inject
+    FailedBuildsCleaner failedBuildsCleaner;
+
+    @Inject
+    TemporaryBuildsCleanerImpl temporaryBuildsCleaner;
+
+    @Inject
+    ManagedExecutor executor;
+
+    @Inject
+    CleanupLock cleanupLock;
+
+    @Inject
+    CleanupPlanner self;
+
+    @Scheduled(cron = "{cleanupPlanner.planCron}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void planRegularly() {
+        logger.info("Starting regular cleanup planning job.");
+        plan();
+    }
+
+    @Scheduled(cron = "{cleanupPlanner.executeCron}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void executeRegularly() {
+        Long planId = self.findLatestPlanned();
+        if (planId == null) {
+            logger.info("No cleanup plan to execute.");
+            return;
+        }
+        logger.info("Starting regular execution of cleanup plan {}.", planId);
+        execute(planId);
+    }
+
+    /**
+     * Finds the candidates of both cleaners concurrently and stores them as a new plan.
+     */
+    @Timed
+    public CleanupPlanView plan() {
+        Instant failedBuildsLimit = Instant.now().minus(failedBuildsRetention, ChronoUnit.HOURS);
+        Date temporaryBuildsThreshold = temporaryBuildsCleaner.getExpirationThreshold();
+        CleanupPlanView plan = self.startPlanning(failedBuildsLimit, temporaryBuildsThreshold.toInstant());
+        discover(plan.getId(), failedBuildsLimit, temporaryBuildsThreshold);
+        return self.get(plan.getId(), false);
+    }
+
+    /**
+     * Starts the planning in background, the plan is {@link CleanupPlan.Status#PLANNING} until the candidates are
+     * found.
+     */
+    public CleanupPlanView planAsync() {
+        Instant failedBuildsLimit = Instant.now().minus(failedBuildsRetention, ChronoUnit.HOURS);
+        Date temporaryBuildsThreshold = temporaryBuildsCleaner.getExpirationThreshold();
+        CleanupPlanView plan = self.startPlanning(failedBuildsLimit, temporaryBuildsThreshold.toInstant());
+        executor.runAsync(() -> discover(plan.getId(), failedBuildsLimit, temporaryBuildsThreshold));
+        return plan;
+    }
+
+    private void discover(long planId, Instant failedBuildsLimit, Date temporaryBuildsThreshold) {
+        try {
+            CompletableFuture<FailedBuildsPlan> failedBuilds = executor
+                    .supplyAsync(() -> failedBuildsCleaner.planOlder(failedBuildsLimit));
+            CompletableFuture<List<String>> groupBuildIds = executor.supplyAsync(
+                    () -> temporaryBuildsCleaner.planExpiredBuildConfigSetRecords(temporaryBuildsThreshold));
+            CompletableFuture<List<PlannedBuildDeletion>> builds = executor
+                    .supplyAsync(() -> temporaryBuildsCleaner.planExpiredBuildRecords(temporaryBuildsThreshold));
+
+            CleanupPlanContent content = new CleanupPlanContent(
+                    failedBuilds.join().getIndyCleanups(),
+                    groupBuildIds.join(),
+                    builds.join(),
+                    failedBuilds.join().getKeptGroups(),
+                    null);
+            content.setEstimate(
+                    CleanupEstimate.of(content.getIndyCleanups(), content.getGroupBuildIds(), content.getBuilds()));
+
+            self.finishPlanning(planId, content);
+            logger.info("Created cleanup plan {} with estimate {}.", planId, content.getEstimate());
+        } catch (RuntimeException e) {
+            logger.error("Planning of cleanup plan " + planId + " failed.", e);
+            self.finishPlanning(planId, null);
+        }
+    }
+
+    @Transactional
+    public CleanupPlanView get(long planId, boolean includeContent) {
+        return CleanupPlanView.of(find(planId), includeContent);
+    }
+
+    /**
+     * Executes the plan and waits until it's done.
+     */
+    @Timed
+    public CleanupPlanView execute(long planId) {
+        long stamp = lockPlanExecution();
+        CleanupPlan plan = startExecution(planId, stamp);
+        try {
+            run(plan);
+        } finally {
+            cleanupLock.unlockPlanExecution(stamp);
+        }
+        return self.get(planId, false);
+    }
+
+    /**
+     * Starts the execution of the plan in background.
+     */
+    public CleanupPlanView executeAsync(long planId) {
+        long stamp = lockPlanExecution();
+        CleanupPlan plan = startExecution(planId, stamp);
+        executor.runAsync(() -> {
+            try {
+                run(plan);
+            } finally {
+                cleanupLock.unlockPlanExecution(stamp);
+            }
+        });
+        return CleanupPlanView.of(plan, false);
+    }
+
+    private long lockPlanExecution() {
+        long stamp = cleanupLock.tryLockPlanExecution();
+        if (stamp == 0) {
+            throw new ClientErrorException(
+                    "Scheduled cleanups or another cleanup plan are running, try again later",
+                    Response.Status.CONFLICT);
+        }
+        return stamp;
+    }
+
+    private CleanupPlan startExecution(long planId, long stamp) {
+        try {
+            return self.startExecution(planId);
+        } catch (RuntimeException e) {
+            cleanupLock.unlockPlanExecution(stamp);
+            throw e;
+        }
+    }
+
+    private void run(CleanupPlan plan) {
+        CleanupPlanContent content = plan.content;
+        try {
+            // Indy and PNC cleanups don't depend on each other
+            CompletableFuture<Integer> indyFailures = executor.supplyAsync(
+                    () -> failedBuildsCleaner.executePlanned(content.getIndyCleanups(), content.getKeptGroups()));
+            int failures = runConcurrently(
+                    content.getGroupBuildIds(),
+                    temporaryBuildsCleaner::deleteBuildConfigSetRecord);
+            failures += runConcurrently(content.getBuilds(), temporaryBuildsCleaner::deleteBuildRecord);
+            failures += indyFailures.join();
+
+            logger.info("Cleanup plan {} executed with {} failures.", plan.id, failures);
+            self.finishExecution(plan.id, CleanupPlan.Status.EXECUTED, failures);
+        } catch (RuntimeException e) {
+            logger.error("Execution of cleanup plan " + plan.id + " failed.", e);
+            self.finishExecution(plan.id, CleanupPlan.Status.FAILED, null);
+        }
+    }
+
+    /**
+     * Runs the deletion for each item, at most {@link #concurrency} of them at a time.
+     *
+     * @return number of failed deletions
+     */
+    private <T> int runConcurrently(Collection<T> items, Predicate<T> deletion) {
+        AtomicInteger failures = new AtomicInteger();
+        Semaphore permits = new Semaphore(concurrency);
+        for (T item : items) {
+            permits.acquireUninterruptibly();
+            executor.supplyAsync(() -> deletion.test(item)).whenComplete((deleted, error) -> {
+                if (error != null) {
+                    logger.error("Deletion of " + item + " failed.", error);
+                }
+                if (!Boolean.TRUE.equals(deleted)) {
+                    failures.incrementAndGet();
+                }
+                permits.release();
+            });
+        }
+        permits.acquireUninterruptibly(concurrency);
+        return failures.get();
+    }
+
+    /**
+     * A plan is planned or executed by this instance of the service only, so the plans left in progress by the previous
+     * run will never finish.
+     */
+    void onStart(@Observes StartupEvent event) {
+        int interrupted = self.failInterrupted();
+        if (interrupted > 0) {
+            logger.warn("Marked {} cleanup plans interrupted by the last shutdown as failed.", interrupted);
+        }
+    }
+
+    @Transactional
+    int failInterrupted() {
+        return CleanupPlan.update(
+                "status = ?1 WHERE status IN ?2",
+                CleanupPlan.Status.FAILED,
+                List.of(CleanupPlan.Status.PLANNING, CleanupPlan.Status.EXECUTING));
+    }
+
+    @Transactional
+    CleanupPlanView startPlanning(Instant failedBuildsLimit, Instant temporaryBuildsThreshold) {
+        CleanupPlanContent content = new CleanupPlanContent(List.of(), List.of(), List.of(), List.of(), null);
+        content.setEstimate(CleanupEstimate.of(List.of(), List.of(), List.of()));
+        return store(CleanupPlan.Status.PLANNING, failedBuildsLimit, temporaryBuildsThreshold, content);
+    }
+
+    /**
+     * @param content the found candidates or <code>null</code> if the planning failed
+     */
+    @Transactional
+    void finishPlanning(long planId, CleanupPlanContent content) {
+        CleanupPlan plan = find(planId);
+        if (content == null) {
+            plan.status = CleanupPlan.Status.FAILED;
+        } else {
+            plan.status = CleanupPlan.Status.PLANNED;
+            plan.content = content;
+        }
+    }
+
+    @Transactional
+    CleanupPlanView store(Instant failedBuildsLimit, Instant temporaryBuildsThreshold, CleanupPlanContent content) {
+        return store(CleanupPlan.Status.PLANNED, failedBuildsLimit, temporaryBuildsThreshold, content);
+    }
+
+    private CleanupPlanView store(
+            CleanupPlan.Status status,
+            Instant failedBuildsLimit,
+            Instant temporaryBuildsThreshold,
+            CleanupPlanContent content) {
+        CleanupPlan plan = new CleanupPlan();
+        plan.status = status;
+        plan.createdTime = Instant.now();
+        plan.failedBuildsLimit = failedBuildsLimit;
+        plan.temporaryBuildsThreshold = temporaryBuildsThreshold;
+        plan.content = content;
+        plan.persist();
+        return CleanupPlanView.of(plan, false);
+    }
+
+    @Transactional
+    Long findLatestPlanned() {
+        CleanupPlan plan = CleanupPlan.find("status = ?1 ORDER BY createdTime DESC", CleanupPlan.Status.PLANNED)
+                .firstResult();
+        return plan == null ? null : plan.id;
+    }
+
+    @Transactional
+    CleanupPlan startExecution(long planId) {
+        CleanupPlan plan = find(planId);
+        if (plan.status != CleanupPlan.Status.PLANNED) {
+            throw new ClientErrorException("Cleanup plan " + planId + " is " + plan.status, Response.Status.CONFLICT);
+        }
+        if (plan.createdTime.isBefore(Instant.now().minus(maxPlanAge, ChronoUnit.HOURS))) {
+            throw new ClientErrorException(
+                    "Cleanup plan " + planId + " is older than " + maxPlanAge + " hours, create a new one",
+                    Response.Status.CONFLICT);
+        }
+        plan.status = CleanupPlan.Status.EXECUTING;
+        return plan;
+    }
+
+    @Transactional
+    void finishExecution(long planId, CleanupPlan.Status status, Integer failures) {
+        CleanupPlan plan = find(planId);
+        plan.status = status;
+        plan.executedTime = Instant.now();
+        plan.failures = failures;
+    }
+
+    private static CleanupPlan find(long planId) {
+        CleanupPlan plan = CleanupPlan.findById(planId);
+        if (plan == null) {
+            throw new NotFoundException("Cleanup plan " + planId + " not found");
+        }
+        return plan;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.rest;
+
+import io.micrometer.core.annotation.Timed;
+import io.opentelemetry.instrumentation.annotations.WithSpan;
+
+import org.jboss.pnc.cleaner.archiver.ArchivedBuildExport;
+import org.jboss.pnc.cleaner.archiver.ArchivedBuildQuery;
+import org.jboss.pnc.cleaner.archiver.ArchivedBuildSearch;
+import org.jboss.pnc.cleaner.archiver.ArchivedBuildSearchHit;
+import org.jboss.pnc.cleaner.archiver.ArchivedBuildStats;
+import org.jboss.pnc.cleaner.archiver.ArchivedBuildStatsRow;
+import org.jboss.pnc.cleaner.archiver.ArchivedBuildSummary;
+import org.jboss.pnc.cleaner.archiver.ArchivedBuildsFilter;
+import org.jboss.pnc.cleaner.archiver.ArchivedBuildsPage;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.BadRequestException;
+import jakarta.ws.rs.BeanParam;
+import jakarta.ws.rs.DefaultValue;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+/**
+ * Read-only access to the archived build records.
+ */
+@Path("/archived-builds")
+public class ArchivedBuilds {
+
+    @Inject
+    ArchivedBuildQuery archivedBuildQuery;
+
+    @Inject
+    ArchivedBuildSearch archivedBuildSearch;
+
+    @Inject
+    ArchivedBuildStats archivedBuildStats;
+
+    @Inject
+    ArchivedBuildExport archivedBuildExport;
+
+    /**
+     * Lists archived builds from the newest to the oldest one (by submit time). To get the next page, pass the
+     * <code>nextCursor</code> value from the response as the <code>cursor</code> parameter.
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Timed
+    @WithSpan
+    public ArchivedBuildsPage<ArchivedBuildSummary> getArchivedBuilds(
+            @BeanParam ArchivedBuildsFilter filter,
+            @QueryParam("cursor") String cursor,
+            @QueryParam("pageSize") @DefaultValue("100") int pageSize) {
+        return archivedBuildQuery.find(filter, cursor, pageSize);
+    }
+
+    /**
+     * Finds archived builds whose trimmed log contains the given text (case-insensitive) and returns their ids with a
+     * snippet of the log around the match, from the newest build to the oldest one. The filter parameters of the
+     * listing can be used to narrow the search.
+     */
+    @Path("/search")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Timed
+    @WithSpan
+    public ArchivedBuildsPage<ArchivedBuildSearchHit> searchLogs(
+            @QueryParam("q") String text,
+            @QueryParam("log") @DefaultValue("BUILD") ArchivedBuildSearch.SearchedLog log,
+            @BeanParam ArchivedBuildsFilter filter,
+            @QueryParam("cursor") String cursor,
+            @QueryParam("pageSize") @DefaultValue("20") int pageSize) {
+        return archivedBuildSearch.search(text, log, filter, cursor, pageSize);
+    }
+
+    /**
+     * Returns the number of archived builds per status, error category and build type, aggregated by the given period.
+     * The stats are read from pre-aggregated daily rollups, the days are in UTC.
+     *
+     * @param from first day included, ISO date (e.g. 2024-01-01), defaults to one year ago
+     * @param to first day excluded, ISO date, defaults to tomorrow
+     */
+    @Path("/stats")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Timed
+    @WithSpan
+    public List<ArchivedBuildStatsRow> getStats(
+            @QueryParam("from") String from,
+            @QueryParam("to") String to,
+            @QueryParam("granularity") @DefaultValue("MONTH") ArchivedBuildStats.Granularity granularity) {
+        LocalDate toDate = parseDate("to", to, LocalDate.now().plusDays(1));
+        LocalDate fromDate = parseDate("from", from, toDate.minusYears(1));
+        return archivedBuildStats.find(fromDate, toDate, granularity);
+    }
+
+    /**
+     * Streams all archived builds matching the filter as NDJSON or CSV, ordered by the time they were archived. For an
+     * incremental export, pass <code>archived_time,buildrecord_id</code> of the last record received in the previous
+     * export as the <code>after</code> parameter. Records archived within the last minutes are left for the next
+     * export, see archivedBuildExport.safetyLag.
+     */
+    @Path("/export")
+    @GET
+    @Timed
+    @WithSpan
+    public Response export(
+            @QueryParam("format") @DefaultValue("NDJSON") ArchivedBuildExport.Format format,
+            @QueryParam("includeLogs") @DefaultValue("false") boolean includeLogs,
+            @QueryParam("after") String after,
+            @BeanParam ArchivedBuildsFilter filter) {
+        ArchivedBuildExport.Position position = after == null || after.isBlank() ? null
+                : ArchivedBuildExport.Position.parse(after);
+        // the response is committed before the query runs, so the filter has to be checked now
+        filter.validate();
+        StreamingOutput output = stream -> archivedBuildExport
+                .export(format, filter, position, includeLogs, stream);
+        return Response.ok(output, format.getMediaType())
+                .header(
+                        "Content-Disposition",
+                        "attachment; filename=\"archived-builds" + format.getFileExtension() + "\"")
+                .build();
+    }
+
+    private static LocalDate parseDate(String name, String value, LocalDate defaultValue) {
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return LocalDate.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new BadRequestException("Invalid value of parameter " + name + ": " + value, e);
+        }
+    }
+}
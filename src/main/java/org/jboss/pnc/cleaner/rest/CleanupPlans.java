@@ -0,0 +1,100 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.rest;
+
+import io.micrometer.core.annotation.Timed;
+import io.opentelemetry.instrumentation.annotations.SpanAttribute;
+import io.opentelemetry.instrumentation.annotations.WithSpan;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.pnc.cleaner.plan.CleanupPlanView;
+import org.jboss.pnc.cleaner.plan.CleanupPlanner;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.DefaultValue;
+import jakarta.ws.rs.ForbiddenException;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+/**
+ * Dry runs of the failed and temporary builds cleanups and execution of their results.
+ */
+@Path("/cleanup-plans")
+@Produces(MediaType.APPLICATION_JSON)
+public class CleanupPlans {
+
+    @Inject
+    CleanupPlanner cleanupPlanner;
+
+    /**
+     * The service has no authentication of its own, a planning loads PNC and Indy and an execution deletes builds, so
+     * plans are created and executed only by the scheduler unless this is enabled.
+     */
+    @ConfigProperty(name = "cleanupPlanner.restExecution.enabled", defaultValue = "false")
+    boolean restExecutionEnabled;
+
+    /**
+     * Starts finding everything the cleaners would delete in background and returns the new plan, its status shows
+     * when the planning is done. Nothing is deleted. Refused unless enabled by
+     * <code>cleanupPlanner.restExecution.enabled</code>.
+     */
+    @POST
+    @Timed
+    @WithSpan
+    public Response createPlan() {
+        checkEnabled();
+        return Response.accepted(cleanupPlanner.planAsync()).build();
+    }
+
+    /**
+     * Returns the plan with its estimate, the planned items are included unless <code>content=false</code>.
+     */
+    @Path("/{planId}")
+    @GET
+    @Timed
+    public CleanupPlanView getPlan(
+            @PathParam("planId") long planId,
+            @QueryParam("content") @DefaultValue("true") boolean includeContent) {
+        return cleanupPlanner.get(planId, includeContent);
+    }
+
+    /**
+     * Starts the execution of a plan in background, the progress is visible in the plan status. Refused unless enabled
+     * by <code>cleanupPlanner.restExecution.enabled</code>.
+     */
+    @Path("/{planId}/execute")
+    @POST
+    @Timed
+    @WithSpan
+    public Response executePlan(@SpanAttribute(value = "planId") @PathParam("planId") long planId) {
+        checkEnabled();
+        return Response.accepted(cleanupPlanner.executeAsync(planId)).build();
+    }
+
+    private void checkEnabled() {
+        if (!restExecutionEnabled) {
+            throw new ForbiddenException("Creating and executing cleanup plans over REST is disabled");
+        }
+    }
+}
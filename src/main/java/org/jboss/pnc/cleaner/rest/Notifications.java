@@ -0,0 +1,72 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.rest;
+
+import io.micrometer.core.annotation.Timed;
+import io.opentelemetry.instrumentation.annotations.SpanAttribute;
+import io.opentelemetry.instrumentation.annotations.WithSpan;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.pnc.cleaner.archiver.ArchiveQueue;
+import org.jboss.pnc.common.pnc.LongBase32IdConverter;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.BadRequestException;
+import jakarta.ws.rs.ForbiddenException;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.core.Response;
+
+/**
+ * Notifications about events in PNC which the cleaner reacts to.
+ */
+@Path("/notifications")
+public class Notifications {
+
+    @Inject
+    ArchiveQueue archiveQueue;
+
+    /**
+     * The service has no authentication of its own and a notification makes the archiver call PNC, so notifications
+     * are accepted only when this is enabled.
+     */
+    @ConfigProperty(name = "buildArchiver.notifications.enabled", defaultValue = "false")
+    boolean notificationsEnabled;
+
+    /**
+     * Queues a finished build for archiving. Repeated notifications of a build which is still waiting are ignored.
+     * Refused unless enabled by <code>buildArchiver.notifications.enabled</code>.
+     */
+    @Path("/builds/{buildId}/finished")
+    @POST
+    @Timed
+    @WithSpan
+    public Response buildFinished(@SpanAttribute(value = "buildId") @PathParam("buildId") String buildId) {
+        if (!notificationsEnabled) {
+            throw new ForbiddenException("Build notifications are disabled");
+        }
+        try {
+            LongBase32IdConverter.toLong(buildId);
+        } catch (RuntimeException e) {
+            throw new BadRequestException("Invalid build id " + buildId);
+        }
+        archiveQueue.enqueue(buildId);
+        return Response.accepted().build();
+    }
+}
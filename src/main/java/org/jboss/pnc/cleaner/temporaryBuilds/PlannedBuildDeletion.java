@@ -0,0 +1,48 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.temporaryBuilds;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.jboss.pnc.dto.Build;
+
+/**
+ * Expired temporary build to be deleted together with its archive and final log.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PlannedBuildDeletion {
+
+    private String buildId;
+
+    /** Id the archive of the build is deleted by. */
+    private String buildConfigRevisionId;
+
+    public static PlannedBuildDeletion of(Build build) {
+        return new PlannedBuildDeletion(build.getId(), build.getBuildConfigRevision().getId());
+    }
+
+    /**
+     * @return number of requests needed to delete the build, its archive and final log
+     */
+    public int estimateRequests() {
+        return 3;
+    }
+}
@@ -43,8 +43,10 @@ import java.time.temporal.ChronoUnit;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * Deletes temporary builds via Orchestrator REST API
@@ -86,8 +88,7 @@ public class TemporaryBuildsCleanerImpl implements TemporaryBuildsCleaner {
         log.info(
                 "Regular cleanup of expired temporary builds started. Removing builds older than "
                         + TEMPORARY_BUILD_LIFESPAN + " days.");
-        Date expirationThreshold = new Date(
-                Instant.now().minus(TEMPORARY_BUILD_LIFESPAN, ChronoUnit.DAYS).toEpochMilli());
+        Date expirationThreshold = getExpirationThreshold();
 
         // Create a parent child span with values from MDC
         SpanBuilder spanBuilder = OtelUtils.buildChildSpan(
@@ -117,20 +118,64 @@ public class TemporaryBuildsCleanerImpl implements TemporaryBuildsCleaner {
         }
     }
 
+    /**
+     * @return the time temporary builds created before are expired
+     */
+    public Date getExpirationThreshold() {
+        return new Date(Instant.now().minus(TEMPORARY_BUILD_LIFESPAN, ChronoUnit.DAYS).toEpochMilli());
+    }
+
+    /**
+     * Finds the expired temporary BuildConfigSetRecords without deleting them.
+     *
+     * @return ids of the expired BuildConfigSetRecords
+     */
+    @Timed
+    public List<String> planExpiredBuildConfigSetRecords(Date expirationThreshold) {
+        return temporaryBuildsCleanerAdapter.findTemporaryGroupBuildsOlderThan(expirationThreshold)
+                .stream()
+                .map(GroupBuild::getId)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Finds the expired temporary builds without deleting them.
+     *
+     * @return the expired builds, which are archived
+     */
+    @Timed
+    public List<PlannedBuildDeletion> planExpiredBuildRecords(Date expirationThreshold) {
+        return temporaryBuildsCleanerAdapter.findTemporaryBuildsOlderThan(expirationThreshold)
+                .stream()
+                .map(PlannedBuildDeletion::of)
+                .collect(Collectors.toList());
+    }
+
     @Timed
     void deleteExpiredBuildConfigSetRecords(Date expirationThreshold) {
         Collection<GroupBuild> expiredBCSRecords = temporaryBuildsCleanerAdapter
                 .findTemporaryGroupBuildsOlderThan(expirationThreshold);
 
         for (GroupBuild groupBuild : expiredBCSRecords) {
-            try {
-                log.info("Deleting temporary BuildConfigSetRecord {}", groupBuild);
-                temporaryBuildsCleanerAdapter.deleteTemporaryGroupBuild(groupBuild.getId());
-                log.info("Temporary BuildConfigSetRecord {} was deleted successfully", groupBuild);
-            } catch (OrchInteractionException ex) {
-                warnCounter.increment();
-                log.warn("Deletion of temporary BuildConfigSetRecord {} failed!", groupBuild);
-            }
+            deleteBuildConfigSetRecord(groupBuild.getId());
+        }
+    }
+
+    /**
+     * Deletes a temporary BuildConfigSetRecord.
+     *
+     * @return true if the deletion succeeded
+     */
+    public boolean deleteBuildConfigSetRecord(String groupBuildId) {
+        try {
+            log.info("Deleting temporary BuildConfigSetRecord {}", groupBuildId);
+            temporaryBuildsCleanerAdapter.deleteTemporaryGroupBuild(groupBuildId);
+            log.info("Temporary BuildConfigSetRecord {} was deleted successfully", groupBuildId);
+            return true;
+        } catch (OrchInteractionException ex) {
+            warnCounter.increment();
+            log.warn("Deletion of temporary BuildConfigSetRecord {} failed!", groupBuildId);
+            return false;
         }
     }
 
@@ -143,27 +188,38 @@ public class TemporaryBuildsCleanerImpl implements TemporaryBuildsCleaner {
             expiredBuilds = temporaryBuildsCleanerAdapter.findTemporaryBuildsOlderThan(expirationThreshold);
             expiredBuilds.removeAll(failedBuilds);
             for (Build build : expiredBuilds) {
-                try {
-                    log.info("Deleting temporary build {}", build);
-                    temporaryBuildsCleanerAdapter.deleteTemporaryBuild(build.getId());
-                    log.info("Temporary build {} was deleted successfully", build);
-
-                    log.info(
-                            "Deleting archive of temporary build {} with build config id {}",
-                            build,
-                            build.getBuildConfigRevision().getId());
-                    archivesCleaner.deleteArchive(build.getBuildConfigRevision().getId());
-
-                    log.info("Deleting temporary build {} final-log in Bifrost", build);
-                    bifrostFinalLogCleaner.deleteFinalLog(build.getId());
-                    log.info("Temporary build {} final-log was deleted successfully", build);
-
-                } catch (OrchInteractionException ex) {
-                    warnCounter.increment();
-                    log.warn("Deletion of temporary build {} failed! Cause: {}", build, ex);
+                if (!deleteBuildRecord(PlannedBuildDeletion.of(build))) {
                     failedBuilds.add(build);
                 }
             }
         } while (!expiredBuilds.isEmpty());
     }
+
+    /**
+     * Deletes a temporary build together with its archive and final log.
+     *
+     * @return true if the deletion of the build succeeded
+     */
+    public boolean deleteBuildRecord(PlannedBuildDeletion build) {
+        try {
+            log.info("Deleting temporary build {}", build.getBuildId());
+            temporaryBuildsCleanerAdapter.deleteTemporaryBuild(build.getBuildId());
+            log.info("Temporary build {} was deleted successfully", build.getBuildId());
+
+            log.info(
+                    "Deleting archive of temporary build {} with build config id {}",
+                    build.getBuildId(),
+                    build.getBuildConfigRevisionId());
+            archivesCleaner.deleteArchive(build.getBuildConfigRevisionId());
+
+            log.info("Deleting temporary build {} final-log in Bifrost", build.getBuildId());
+            bifrostFinalLogCleaner.deleteFinalLog(build.getBuildId());
+            log.info("Temporary build {} final-log was deleted successfully", build.getBuildId());
+            return true;
+        } catch (OrchInteractionException ex) {
+            warnCounter.increment();
+            log.warn("Deletion of temporary build {} failed! Cause: {}", build.getBuildId(), ex);
+            return false;
+        }
+    }
 }
@@ -19,6 +19,7 @@ package org.jboss.pnc.cleaner.temporaryBuilds;
 
 import io.opentelemetry.instrumentation.annotations.WithSpan;
 import io.quarkus.scheduler.Scheduled;
+import org.jboss.pnc.cleaner.common.CleanupLock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,14 +39,19 @@ public class TemporaryBuildsCleanupScheduler {
     @Inject
     TemporaryBuildsCleaner temporaryBuildsCleanupScheduleWorker;
 
+    @Inject
+    CleanupLock cleanupLock;
+
     /**
      * Schedules cleanup of old temporary builds
      */
     @Scheduled(cron = "{temporaryBuildsCleaner.cron}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
     @WithSpan
     public void cleanupExpiredTemporaryBuilds() {
-        log.info("Regular deletion of temporary builds triggered by clock.");
-        temporaryBuildsCleanupScheduleWorker.cleanupExpiredTemporaryBuilds();
-        log.info("Regular deletion of temporary builds successfully finished.");
+        cleanupLock.runScheduled("regular deletion of temporary builds", () -> {
+            log.info("Regular deletion of temporary builds triggered by clock.");
+            temporaryBuildsCleanupScheduleWorker.cleanupExpiredTemporaryBuilds();
+            log.info("Regular deletion of temporary builds successfully finished.");
+        });
     }
 }
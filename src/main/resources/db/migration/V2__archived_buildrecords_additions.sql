@@ -0,0 +1,81 @@
+--
+-- JBoss, Home of Professional Open Source.
+-- Copyright 2019-2022 Red Hat, Inc., and individual contributors
+-- as indicated by the @author tags.
+--
+-- Licensed under the Apache License, Version 2.0 (the "License");
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+-- http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+--
+
+-- Trimmed logs are stored as text, so they can be searched. The large object columns of the older versions are only
+-- renamed and new text columns are added, neither of which rewrites the table or takes its lock for long. The logs are
+-- moved from the large objects in batches by LegacyLogMigration in the background, which also unlinks the moved large
+-- objects.
+DO $$
+BEGIN
+    IF (SELECT data_type FROM information_schema.columns
+            WHERE table_name = '_archived_buildrecords' AND column_name = 'trimmed_buildlog') = 'oid' THEN
+        ALTER TABLE _archived_buildrecords RENAME COLUMN trimmed_buildlog TO trimmed_buildlog_oid;
+        ALTER TABLE _archived_buildrecords ADD COLUMN trimmed_buildlog text;
+    END IF;
+    IF (SELECT data_type FROM information_schema.columns
+            WHERE table_name = '_archived_buildrecords' AND column_name = 'trimmed_repourlog') = 'oid' THEN
+        ALTER TABLE _archived_buildrecords RENAME COLUMN trimmed_repourlog TO trimmed_repourlog_oid;
+        ALTER TABLE _archived_buildrecords ADD COLUMN trimmed_repourlog text;
+    END IF;
+END $$;
+
+-- Time of the last write by the archiver, used by the incremental export
+ALTER TABLE _archived_buildrecords ADD COLUMN IF NOT EXISTS archived_time timestamp(6) with time zone;
+
+-- Daily rollups of the archived builds
+CREATE TABLE IF NOT EXISTS _archived_buildrecords_daily_stats (
+    submit_day date NOT NULL,
+    status varchar(50) NOT NULL,
+    error_group varchar(10) NOT NULL,
+    error_msg varchar(255) NOT NULL,
+    buildtype varchar(100) NOT NULL,
+    build_count bigint NOT NULL,
+    CONSTRAINT _archived_buildrecords_daily_stats_pkey
+        PRIMARY KEY (submit_day, status, error_group, error_msg, buildtype)
+);
+
+-- Position of the incremental file export
+CREATE TABLE IF NOT EXISTS _archived_buildrecords_export_cursor (
+    name varchar(50) NOT NULL,
+    archived_time timestamp(6) with time zone NOT NULL,
+    buildrecord_id bigint NOT NULL,
+    CONSTRAINT _archived_buildrecords_export_cursor_pkey PRIMARY KEY (name)
+);
+
+-- Dimension values of the STAR storage mode
+CREATE TABLE IF NOT EXISTS _archived_dimension_values (
+    id bigint GENERATED BY DEFAULT AS IDENTITY,
+    dimension varchar(30) NOT NULL,
+    value text NOT NULL,
+    CONSTRAINT _archived_dimension_values_pkey PRIMARY KEY (id),
+    CONSTRAINT uk_archived_dimension_values UNIQUE (dimension, value)
+);
+
+ALTER TABLE _archived_buildrecords
+    ADD COLUMN IF NOT EXISTS project_name_dim bigint
+        CONSTRAINT fk_archived_buildrecords_project_name REFERENCES _archived_dimension_values (id),
+    ADD COLUMN IF NOT EXISTS buildconfiguration_name_dim bigint
+        CONSTRAINT fk_archived_buildrecords_buildconfiguration_name REFERENCES _archived_dimension_values (id),
+    ADD COLUMN IF NOT EXISTS username_dim bigint
+        CONSTRAINT fk_archived_buildrecords_username REFERENCES _archived_dimension_values (id),
+    ADD COLUMN IF NOT EXISTS product_name_dim bigint
+        CONSTRAINT fk_archived_buildrecords_product_name REFERENCES _archived_dimension_values (id),
+    ADD COLUMN IF NOT EXISTS product_version_dim bigint
+        CONSTRAINT fk_archived_buildrecords_product_version REFERENCES _archived_dimension_values (id),
+    ADD COLUMN IF NOT EXISTS executionrootname_dim bigint
+        CONSTRAINT fk_archived_buildrecords_executionrootname REFERENCES _archived_dimension_values (id);
@@ -0,0 +1,75 @@
+--
+-- JBoss, Home of Professional Open Source.
+-- Copyright 2019-2022 Red Hat, Inc., and individual contributors
+-- as indicated by the @author tags.
+--
+-- Licensed under the Apache License, Version 2.0 (the "License");
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+-- http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+--
+
+-- Indexes of the queries over the archived builds. The listing is ordered by (submittime, buildrecord_id), so the
+-- filtered columns are followed by the ordering columns and a page is read from the index without sorting.
+--
+-- The indexes are built concurrently, so the archiver keeps writing while they are built. The script runs outside of a
+-- transaction, see the .conf file. A concurrent build which failed leaves an invalid index behind, which IF NOT EXISTS
+-- would keep, so the invalid indexes are dropped first and built again when the migration is repaired and rerun.
+DO $$
+DECLARE
+    invalid record;
+BEGIN
+    FOR invalid IN
+        SELECT c.relname FROM pg_index i JOIN pg_class c ON c.oid = i.indexrelid
+            WHERE i.indrelid = '_archived_buildrecords'::regclass AND NOT i.indisvalid
+                AND c.relname LIKE 'idx\_archived\_buildrecords\_%'
+    LOOP
+        EXECUTE format('DROP INDEX %I', invalid.relname);
+    END LOOP;
+END $$;
+
+-- Listing without filters and the from/to range
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_archived_buildrecords_submittime
+    ON _archived_buildrecords (submittime, buildrecord_id);
+
+-- Listing filtered by status, also used by the log retention
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_archived_buildrecords_status_submittime
+    ON _archived_buildrecords (status, submittime, buildrecord_id);
+
+-- Listing filtered by error category, only failed builds are categorized
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_archived_buildrecords_error_group_submittime
+    ON _archived_buildrecords (categorized_error_group, submittime, buildrecord_id)
+    WHERE categorized_error_group IS NOT NULL;
+
+-- Listing filtered by build config and project
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_archived_buildrecords_buildconfiguration_submittime
+    ON _archived_buildrecords (buildconfiguration_id, submittime, buildrecord_id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_archived_buildrecords_project_submittime
+    ON _archived_buildrecords (project_id, submittime, buildrecord_id);
+
+-- Lookups by the build content id used in repository names
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_archived_buildrecords_buildcontentid
+    ON _archived_buildrecords (buildcontentid);
+
+-- Incremental export
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_archived_buildrecords_archived_time
+    ON _archived_buildrecords (archived_time, buildrecord_id);
+
+-- Log retention, only the records which still have logs
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_archived_buildrecords_with_logs
+    ON _archived_buildrecords (status, submittime)
+    WHERE trimmed_buildlog IS NOT NULL OR trimmed_repourlog IS NOT NULL;
+
+-- Substring search over the logs
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_archived_buildrecords_buildlog_trgm
+    ON _archived_buildrecords USING gin (trimmed_buildlog gin_trgm_ops);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_archived_buildrecords_repourlog_trgm
+    ON _archived_buildrecords USING gin (trimmed_repourlog gin_trgm_ops);
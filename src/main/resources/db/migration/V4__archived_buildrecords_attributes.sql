@@ -0,0 +1,33 @@
+--
+-- JBoss, Home of Professional Open Source.
+-- Copyright 2019-2022 Red Hat, Inc., and individual contributors
+-- as indicated by the @author tags.
+--
+-- Licensed under the Apache License, Version 2.0 (the "License");
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+-- http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+--
+
+-- All attributes of the archived builds. The jsonb_path_ops index serves the containment (@>) filter of the listing.
+ALTER TABLE _archived_buildrecords ADD COLUMN IF NOT EXISTS attributes jsonb;
+
+-- The index is built concurrently, so the archiver keeps writing while it is built. The script runs outside of a
+-- transaction, see the .conf file. An invalid index left by a failed build is dropped first, see V3.
+DO $$
+BEGIN
+    IF EXISTS (SELECT 1 FROM pg_index i JOIN pg_class c ON c.oid = i.indexrelid
+            WHERE c.relname = 'idx_archived_buildrecords_attributes' AND NOT i.indisvalid) THEN
+        DROP INDEX idx_archived_buildrecords_attributes;
+    END IF;
+END $$;
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_archived_buildrecords_attributes
+    ON _archived_buildrecords USING gin (attributes jsonb_path_ops);
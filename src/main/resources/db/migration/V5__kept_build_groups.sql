@@ -0,0 +1,27 @@
+--
+-- JBoss, Home of Professional Open Source.
+-- Copyright 2019-2022 Red Hat, Inc., and individual contributors
+-- as indicated by the @author tags.
+--
+-- Licensed under the Apache License, Version 2.0 (the "License");
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+-- http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+--
+
+-- Builds whose Indy groups the failed builds cleaner decided to keep for good. Their groups are skipped without asking
+-- PNC until the decision is older than the revalidation interval.
+CREATE TABLE IF NOT EXISTS _kept_build_groups (
+    buildrecord_id bigint PRIMARY KEY,
+    status varchar(30) NOT NULL,
+    decision_time timestamp(6) with time zone NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_kept_build_groups_decision_time ON _kept_build_groups (decision_time, buildrecord_id);
@@ -0,0 +1,29 @@
+--
+-- JBoss, Home of Professional Open Source.
+-- Copyright 2019-2022 Red Hat, Inc., and individual contributors
+-- as indicated by the @author tags.
+--
+-- Licensed under the Apache License, Version 2.0 (the "License");
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+-- http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+--
+
+-- Cleanups found by a planning run of the cleaners, executed later without repeating the discovery.
+CREATE TABLE IF NOT EXISTS _cleanup_plans (
+    id bigserial PRIMARY KEY,
+    status varchar(20) NOT NULL,
+    created_time timestamp(6) with time zone NOT NULL,
+    failed_builds_limit timestamp(6) with time zone NOT NULL,
+    temporary_builds_threshold timestamp(6) with time zone NOT NULL,
+    executed_time timestamp(6) with time zone,
+    failures integer,
+    content jsonb NOT NULL
+);
@@ -0,0 +1,24 @@
+--
+-- JBoss, Home of Professional Open Source.
+-- Copyright 2019-2022 Red Hat, Inc., and individual contributors
+-- as indicated by the @author tags.
+--
+-- Licensed under the Apache License, Version 2.0 (the "License");
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+-- http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+--
+
+-- Position where a failed builds cleanup run stopped when its time budget was spent, one row per package type.
+CREATE TABLE IF NOT EXISTS _failed_builds_cleaner_cursors (
+    package_type varchar(20) PRIMARY KEY,
+    last_buildrecord_id bigint NOT NULL,
+    updated_time timestamp(6) with time zone NOT NULL
+);
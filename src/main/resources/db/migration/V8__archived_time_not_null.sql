@@ -0,0 +1,44 @@
+--
+-- JBoss, Home of Professional Open Source.
+-- Copyright 2019-2022 Red Hat, Inc., and individual contributors
+-- as indicated by the @author tags.
+--
+-- Licensed under the Apache License, Version 2.0 (the "License");
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+-- http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+--
+
+-- The incremental export orders the records by archived_time, so every record needs one. Records archived before the
+-- time was tracked get their last update time. The rows are updated in batches, each committed on its own, and the
+-- NOT NULL constraint is set after validating a check constraint, which doesn't block writes while the table is
+-- scanned. The script runs outside of a transaction, see the .conf file.
+DO $$
+DECLARE
+    updated integer;
+BEGIN
+    LOOP
+        UPDATE _archived_buildrecords
+            SET archived_time = coalesce(lastupdatetime, endtime, submittime, 'epoch'::timestamptz)
+            WHERE buildrecord_id IN (
+                SELECT buildrecord_id FROM _archived_buildrecords WHERE archived_time IS NULL LIMIT 5000);
+        GET DIAGNOSTICS updated = ROW_COUNT;
+        COMMIT;
+        EXIT WHEN updated = 0;
+    END LOOP;
+END $$;
+
+ALTER TABLE _archived_buildrecords DROP CONSTRAINT IF EXISTS chk_archived_buildrecords_archived_time;
+ALTER TABLE _archived_buildrecords ADD CONSTRAINT chk_archived_buildrecords_archived_time
+    CHECK (archived_time IS NOT NULL) NOT VALID;
+ALTER TABLE _archived_buildrecords VALIDATE CONSTRAINT chk_archived_buildrecords_archived_time;
+-- uses the validated check constraint instead of scanning the table again
+ALTER TABLE _archived_buildrecords ALTER COLUMN archived_time SET NOT NULL;
+ALTER TABLE _archived_buildrecords DROP CONSTRAINT chk_archived_buildrecords_archived_time;
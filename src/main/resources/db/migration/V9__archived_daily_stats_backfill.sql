@@ -0,0 +1,28 @@
+--
+-- JBoss, Home of Professional Open Source.
+-- Copyright 2019-2022 Red Hat, Inc., and individual contributors
+-- as indicated by the @author tags.
+--
+-- Licensed under the Apache License, Version 2.0 (the "License");
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+-- http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+--
+
+-- Fills the daily rollups of an archive which existed before they were maintained. It runs once, on the replica which
+-- migrates the schema, and leaves the rollups alone if they were already filled. Records without a submit time, left
+-- by old versions of the archiver, belong to no day and are not counted.
+INSERT INTO _archived_buildrecords_daily_stats (submit_day, status, error_group, error_msg, buildtype, build_count)
+    SELECT CAST(r.submittime AT TIME ZONE 'UTC' AS date), coalesce(r.status, ''),
+        coalesce(r.categorized_error_group, ''), coalesce(r.categorized_error_msg, ''), coalesce(r.buildtype, ''),
+        count(*)
+    FROM _archived_buildrecords r
+    WHERE r.submittime IS NOT NULL AND NOT EXISTS (SELECT 1 FROM _archived_buildrecords_daily_stats)
+    GROUP BY 1, 2, 3, 4, 5;
@@ -0,0 +1,53 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.archiver;
+
+import io.quarkus.test.junit.QuarkusTest;
+import org.junit.jupiter.api.Test;
+
+import jakarta.inject.Inject;
+
+import static io.restassured.RestAssured.given;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@QuarkusTest
+class ArchiveQueueTest {
+
+    @Inject
+    ArchiveQueue archiveQueue;
+
+    @Test
+    void shouldQueueNotifiedBuildOnce() {
+        int before = archiveQueue.size();
+
+        given().post("/notifications/builds/AQUEUETESTAAA/finished").then().statusCode(202);
+        given().post("/notifications/builds/AQUEUETESTAAA/finished").then().statusCode(202);
+        given().post("/notifications/builds/AQUEUETESTAAQ/finished").then().statusCode(202);
+
+        assertEquals(before + 2, archiveQueue.size());
+    }
+
+    @Test
+    void shouldRejectInvalidBuildId() {
+        int before = archiveQueue.size();
+
+        given().post("/notifications/builds/ABC/finished").then().statusCode(400);
+
+        assertEquals(before, archiveQueue.size());
+    }
+}
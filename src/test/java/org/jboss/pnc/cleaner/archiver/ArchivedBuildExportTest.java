@@ -0,0 +1,126 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.archiver;
+
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import org.jboss.pnc.enums.BuildStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import jakarta.inject.Inject;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@QuarkusTest
+class ArchivedBuildExportTest {
+
+    private static final long PROJECT_ID = 444444L;
+
+    private static final long FIRST_ID = 920_000L;
+
+    private static final Instant ARCHIVED_TIME = Instant.parse("2024-02-01T00:00:00Z");
+
+    @Inject
+    ArchivedBuildExport archivedBuildExport;
+
+    @BeforeEach
+    void seed() {
+        QuarkusTransaction.requiringNew().run(() -> {
+            ArchivedBuildRecord.delete("projectID", PROJECT_ID);
+            for (int i = 0; i < 3; i++) {
+                ArchivedBuildRecord record = new ArchivedBuildRecord();
+                record.buildRecordId = FIRST_ID + i;
+                record.submitTime = Instant.parse("2024-01-01T00:00:00Z");
+                record.archivedTime = ARCHIVED_TIME.plusSeconds(i);
+                record.status = BuildStatus.SUCCESS;
+                record.projectID = PROJECT_ID;
+                record.projectName = "project, \"quoted\"";
+                record.trimmedBuildLog = "build log " + i;
+                record.persist();
+            }
+        });
+    }
+
+    @Test
+    void shouldExportIncrementallyAsNdjson() throws Exception {
+        ArchivedBuildsFilter filter = new ArchivedBuildsFilter();
+        filter.setProjectId(PROJECT_ID);
+
+        ByteArrayOutputStream full = new ByteArrayOutputStream();
+        ArchivedBuildExport.Position last = archivedBuildExport
+                .export(ArchivedBuildExport.Format.NDJSON, filter, null, false, full);
+
+        String[] lines = full.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].startsWith("{\"buildrecord_id\":" + FIRST_ID + ","));
+        assertFalse(lines[0].contains("trimmed_buildlog"));
+        assertEquals(new ArchivedBuildExport.Position(ARCHIVED_TIME.plusSeconds(2), FIRST_ID + 2), last);
+
+        ByteArrayOutputStream incremental = new ByteArrayOutputStream();
+        ArchivedBuildExport.Position after = ArchivedBuildExport.Position
+                .parse(ARCHIVED_TIME.plusSeconds(1) + "," + (FIRST_ID + 1));
+        archivedBuildExport.export(ArchivedBuildExport.Format.NDJSON, filter, after, true, incremental);
+
+        lines = incremental.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(1, lines.length);
+        assertTrue(lines[0].contains("\"trimmed_buildlog\":\"build log 2\""));
+    }
+
+    @Test
+    void shouldNotExportRecordsWithinSafetyLag() throws Exception {
+        QuarkusTransaction.requiringNew().run(() -> {
+            ArchivedBuildRecord record = new ArchivedBuildRecord();
+            record.buildRecordId = FIRST_ID + 3;
+            record.submitTime = Instant.parse("2024-01-01T00:00:00Z");
+            // its archiving transaction might still be running alongside others
+            record.archivedTime = Instant.now();
+            record.status = BuildStatus.SUCCESS;
+            record.projectID = PROJECT_ID;
+            record.persist();
+        });
+        ArchivedBuildsFilter filter = new ArchivedBuildsFilter();
+        filter.setProjectId(PROJECT_ID);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ArchivedBuildExport.Position last = archivedBuildExport
+                .export(ArchivedBuildExport.Format.NDJSON, filter, null, false, output);
+
+        assertEquals(3, output.toString(StandardCharsets.UTF_8).split("\n").length);
+        assertEquals(new ArchivedBuildExport.Position(ARCHIVED_TIME.plusSeconds(2), FIRST_ID + 2), last);
+    }
+
+    @Test
+    void shouldExportCsvWithHeaderAndQuoting() throws Exception {
+        ArchivedBuildsFilter filter = new ArchivedBuildsFilter();
+        filter.setProjectId(PROJECT_ID);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        archivedBuildExport.export(ArchivedBuildExport.Format.CSV, filter, null, false, output);
+
+        String[] lines = output.toString(StandardCharsets.UTF_8).split("\r\n");
+        assertEquals(4, lines.length);
+        assertTrue(lines[0].startsWith("buildrecord_id,archived_time,"));
+        assertTrue(lines[1].contains(",\"project, \"\"quoted\"\"\","));
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.archiver;
+
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import org.jboss.pnc.enums.BuildStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the queries over the archived builds are served by the indexes created by the migrations. Sequential
+ * scans are disabled, so the planner picks an index whenever one is usable even on the small test table.
+ */
+@QuarkusTest
+class ArchivedBuildIndexesTest {
+
+    private static final long PROJECT_ID = 454545L;
+
+    private static final long FIRST_ID = 930_000L;
+
+    private static final int PAGE_SIZE = 100;
+
+    @Inject
+    EntityManager entityManager;
+
+    @BeforeEach
+    void seed() {
+        QuarkusTransaction.requiringNew().run(() -> {
+            ArchivedBuildRecord.delete("projectID", PROJECT_ID);
+            for (int i = 0; i < 20; i++) {
+                ArchivedBuildRecord record = new ArchivedBuildRecord();
+                record.buildRecordId = FIRST_ID + i;
+                record.archivedTime = Instant.now();
+                record.submitTime = Instant.parse("2024-01-01T00:00:00Z").plusSeconds(i);
+                record.status = i % 2 == 0 ? BuildStatus.SUCCESS : BuildStatus.FAILED;
+                record.categorizedErrorGroup = i % 2 == 0 ? null : ArchivedBuildRecord.ErrorGroup.PNC;
+                record.projectID = PROJECT_ID;
+                record.buildConfigID = (long) i % 3;
+                record.buildcontentID = "build-" + (FIRST_ID + i);
+                record.trimmedBuildLog = "[ERROR] Failed to execute goal " + i;
+                record.persist();
+            }
+        });
+    }
+
+    @Test
+    void listingByStatusUsesIndex() {
+        ArchivedBuildsFilter filter = new ArchivedBuildsFilter();
+        filter.setStatus(BuildStatus.FAILED);
+        assertPlanUses(
+                "idx_archived_buildrecords_status_submittime",
+                ArchivedBuildQuery.listingQuery(filter, null, PAGE_SIZE));
+    }
+
+    @Test
+    void listingByErrorGroupUsesPartialIndex() {
+        ArchivedBuildsFilter filter = new ArchivedBuildsFilter();
+        filter.setErrorGroup(ArchivedBuildRecord.ErrorGroup.PNC);
+        assertPlanUses(
+                "idx_archived_buildrecords_error_group_submittime",
+                ArchivedBuildQuery.listingQuery(filter, null, PAGE_SIZE));
+    }
+
+    @Test
+    void listingByBuildConfigUsesIndex() {
+        ArchivedBuildsFilter filter = new ArchivedBuildsFilter();
+        filter.setBuildConfigId(1L);
+        String cursor = new ArchivedBuildQuery.Cursor(Instant.parse("2024-01-01T00:00:10Z"), FIRST_ID + 10).encode();
+        assertPlanUses(
+                "idx_archived_buildrecords_buildconfiguration_submittime",
+                ArchivedBuildQuery.listingQuery(filter, cursor, PAGE_SIZE));
+    }
+
+    @Test
+    void listingByProjectUsesIndex() {
+        ArchivedBuildsFilter filter = new ArchivedBuildsFilter();
+        filter.setProjectId(PROJECT_ID);
+        assertPlanUses(
+                "idx_archived_buildrecords_project_submittime",
+                ArchivedBuildQuery.listingQuery(filter, null, PAGE_SIZE));
+    }
+
+    @Test
+    void logSearchUsesTrigramIndex() {
+        // on the tiny test table walking the primary key backwards for the ORDER BY ... LIMIT looks cheaper, which
+        // isn't the case on a full archive, so plain index scans are disabled to check the trigram index is usable
+        assertPlanUses(
+                "SET LOCAL enable_indexscan = off",
+                "idx_archived_buildrecords_buildlog_trgm",
+                ArchivedBuildSearch.searchQuery(
+                        "execute goal 1",
+                        ArchivedBuildSearch.SearchedLog.BUILD,
+                        new ArchivedBuildsFilter(),
+                        null,
+                        PAGE_SIZE));
+    }
+
+    private void assertPlanUses(String index, ArchivedBuildQuery.SqlQuery query) {
+        assertPlanUses("SET LOCAL enable_indexscan = on", index, query);
+    }
+
+    /**
+     * Explains the statement generated by the application with its parameters bound, the same way it is executed.
+     */
+    private void assertPlanUses(String setting, String index, ArchivedBuildQuery.SqlQuery query) {
+        String plan = QuarkusTransaction.requiringNew().call(() -> {
+            entityManager.createNativeQuery("SET LOCAL enable_seqscan = off").executeUpdate();
+            entityManager.createNativeQuery(setting).executeUpdate();
+            Query explain = entityManager.createNativeQuery("EXPLAIN " + query.getSql());
+            query.getParameters().forEach(explain::setParameter);
+            List<?> lines = explain.getResultList();
+            return lines.stream().map(Object::toString).collect(Collectors.joining("\n"));
+        });
+        assertTrue(plan.contains(index), "Expected " + index + " in plan:\n" + plan);
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.archiver;
+
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import org.jboss.pnc.common.pnc.LongBase32IdConverter;
+import org.jboss.pnc.enums.BuildStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import jakarta.inject.Inject;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@QuarkusTest
+class ArchivedBuildQueryTest {
+
+    private static final long PROJECT_ID = 424242L;
+
+    private static final long FIRST_ID = 900_000L;
+
+    @Inject
+    ArchivedBuildQuery archivedBuildQuery;
+
+    @Inject
+    ArchivedBuildSearch archivedBuildSearch;
+
+    @Inject
+    ArchivedDimensions archivedDimensions;
+
+    @BeforeEach
+    void seed() {
+        QuarkusTransaction.requiringNew().run(() -> {
+            ArchivedBuildRecord.delete("projectID", PROJECT_ID);
+            Instant submitTime = Instant.parse("2024-01-01T00:00:00Z");
+            for (int i = 0; i < 5; i++) {
+                ArchivedBuildRecord record = new ArchivedBuildRecord();
+                record.buildRecordId = FIRST_ID + i;
+                record.archivedTime = Instant.now();
+                // two builds share the same submit time to check the tie breaker
+                record.submitTime = i == 4 ? submitTime.plusSeconds(3) : submitTime.plusSeconds(i);
+                record.status = i % 2 == 0 ? BuildStatus.SUCCESS : BuildStatus.SYSTEM_ERROR;
+                record.projectID = PROJECT_ID;
+                record.trimmedBuildLog = "line1\n[ERROR] Failed_to execute goal " + i + "\nline3";
+                record.attributes = Map.of("BREW_BUILD_NAME", "org.example:lib", "SLOT", String.valueOf(i % 2));
+                record.persist();
+            }
+        });
+    }
+
+    @Test
+    void shouldPageThroughAllRecordsInOrder() {
+        // archived by an old version without a submit time, it would be sorted first and couldn't be a cursor
+        QuarkusTransaction.requiringNew().run(() -> {
+            ArchivedBuildRecord record = new ArchivedBuildRecord();
+            record.buildRecordId = FIRST_ID + 5;
+            record.archivedTime = Instant.now();
+            record.projectID = PROJECT_ID;
+            record.persist();
+        });
+        ArchivedBuildsFilter filter = new ArchivedBuildsFilter();
+        filter.setProjectId(PROJECT_ID);
+
+        List<String> ids = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            ArchivedBuildsPage<ArchivedBuildSummary> page = archivedBuildQuery.find(filter, cursor, 2);
+            page.getContent().forEach(s -> ids.add(s.getId()));
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(3, pages);
+        assertEquals(
+                List.of(
+                        LongBase32IdConverter.toString(FIRST_ID + 4),
+                        LongBase32IdConverter.toString(FIRST_ID + 3),
+                        LongBase32IdConverter.toString(FIRST_ID + 2),
+                        LongBase32IdConverter.toString(FIRST_ID + 1),
+                        LongBase32IdConverter.toString(FIRST_ID)),
+                ids);
+    }
+
+    @Test
+    void shouldFilterByStatus() {
+        ArchivedBuildsFilter filter = new ArchivedBuildsFilter();
+        filter.setProjectId(PROJECT_ID);
+        filter.setStatus(BuildStatus.SYSTEM_ERROR);
+
+        ArchivedBuildsPage<ArchivedBuildSummary> page = archivedBuildQuery.find(filter, null, 10);
+
+        assertEquals(2, page.getContent().size());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void shouldFilterByAttributes() {
+        ArchivedBuildsFilter filter = new ArchivedBuildsFilter();
+        filter.setProjectId(PROJECT_ID);
+        filter.setAttributes(List.of("BREW_BUILD_NAME:org.example:lib", "SLOT:1"));
+
+        ArchivedBuildsPage<ArchivedBuildSummary> page = archivedBuildQuery.find(filter, null, 10);
+
+        assertEquals(
+                List.of(LongBase32IdConverter.toString(FIRST_ID + 3), LongBase32IdConverter.toString(FIRST_ID + 1)),
+                page.getContent().stream().map(ArchivedBuildSummary::getId).toList());
+    }
+
+    @Test
+    void shouldReadNamesStoredAsDimensions() {
+        Long nameId = archivedDimensions.idOf(ArchivedDimensions.Dimension.PROJECT_NAME, "Dimension Project");
+        assertEquals(nameId, archivedDimensions.idOf(ArchivedDimensions.Dimension.PROJECT_NAME, "Dimension Project"));
+        QuarkusTransaction.requiringNew().run(() -> {
+            ArchivedBuildRecord record = ArchivedBuildRecord.findById(FIRST_ID);
+            record.projectName = null;
+            record.projectNameDim = nameId;
+        });
+        ArchivedBuildsFilter filter = new ArchivedBuildsFilter();
+        filter.setProjectId(PROJECT_ID);
+
+        List<ArchivedBuildSummary> content = archivedBuildQuery.find(filter, null, 10).getContent();
+
+        ArchivedBuildSummary oldest = content.get(content.size() - 1);
+        assertEquals(LongBase32IdConverter.toString(FIRST_ID), oldest.getId());
+        assertEquals("Dimension Project", oldest.getProjectName());
+    }
+
+    @Test
+    void shouldFindLogsContainingText() {
+        ArchivedBuildsFilter filter = new ArchivedBuildsFilter();
+        filter.setProjectId(PROJECT_ID);
+
+        ArchivedBuildsPage<ArchivedBuildSearchHit> page = archivedBuildSearch
+                .search("failed_TO execute goal 3", ArchivedBuildSearch.SearchedLog.BUILD, filter, null, 10);
+
+        assertEquals(1, page.getContent().size());
+        ArchivedBuildSearchHit hit = page.getContent().get(0);
+        assertEquals(LongBase32IdConverter.toString(FIRST_ID + 3), hit.getId());
+        assertTrue(hit.getSnippet().contains("[ERROR] Failed_to execute goal 3"));
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void shouldNotTreatWildcardsInSearchedText() {
+        ArchivedBuildsFilter filter = new ArchivedBuildsFilter();
+        filter.setProjectId(PROJECT_ID);
+
+        ArchivedBuildsPage<ArchivedBuildSearchHit> page = archivedBuildSearch
+                .search("Failed%execute", ArchivedBuildSearch.SearchedLog.BUILD, filter, null, 10);
+
+        assertEquals(0, page.getContent().size());
+    }
+}
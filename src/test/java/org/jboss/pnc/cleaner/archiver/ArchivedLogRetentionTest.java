@@ -0,0 +1,89 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.archiver;
+
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import org.jboss.pnc.enums.BuildStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import jakarta.inject.Inject;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@QuarkusTest
+class ArchivedLogRetentionTest {
+
+    private static final long PROJECT_ID = 434343L;
+
+    private static final long FIRST_ID = 910_000L;
+
+    private static final Instant THRESHOLD = Instant.parse("2000-01-01T00:00:00Z");
+
+    @Inject
+    ArchivedLogRetention archivedLogRetention;
+
+    @BeforeEach
+    void seed() {
+        QuarkusTransaction.requiringNew().run(() -> {
+            ArchivedBuildRecord.delete("projectID", PROJECT_ID);
+            for (int i = 0; i < 3; i++) {
+                ArchivedBuildRecord record = new ArchivedBuildRecord();
+                record.buildRecordId = FIRST_ID + i;
+                record.archivedTime = Instant.now();
+                // the last build is newer than the threshold
+                record.submitTime = i == 2 ? THRESHOLD.plusSeconds(1) : THRESHOLD.minusSeconds(1 + i);
+                record.status = BuildStatus.NO_REBUILD_REQUIRED;
+                record.projectID = PROJECT_ID;
+                record.trimmedBuildLog = "build log " + i;
+                record.trimmedAlignLog = "alignment log " + i;
+                record.persist();
+            }
+        });
+    }
+
+    @Test
+    void shouldDropLogsOfExpiredBuildsInBatches() {
+        long[] first = archivedLogRetention.purgeBatch(BuildStatus.NO_REBUILD_REQUIRED, THRESHOLD, 1);
+        long[] second = archivedLogRetention.purgeBatch(BuildStatus.NO_REBUILD_REQUIRED, THRESHOLD, 1);
+        long[] third = archivedLogRetention.purgeBatch(BuildStatus.NO_REBUILD_REQUIRED, THRESHOLD, 1);
+
+        assertEquals(1, first[0]);
+        assertTrue(first[1] > 0);
+        assertEquals(1, second[0]);
+        assertEquals(0, third[0]);
+        assertEquals(0, third[1]);
+
+        QuarkusTransaction.requiringNew().run(() -> {
+            for (int i = 0; i < 2; i++) {
+                ArchivedBuildRecord expired = ArchivedBuildRecord.findById(FIRST_ID + i);
+                assertNull(expired.trimmedBuildLog);
+                assertNull(expired.trimmedAlignLog);
+                assertEquals(BuildStatus.NO_REBUILD_REQUIRED, expired.status);
+            }
+            ArchivedBuildRecord kept = ArchivedBuildRecord.findById(FIRST_ID + 2);
+            assertNotNull(kept.trimmedBuildLog);
+            assertNotNull(kept.trimmedAlignLog);
+        });
+    }
+}
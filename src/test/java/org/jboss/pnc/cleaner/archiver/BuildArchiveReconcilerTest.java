@@ -0,0 +1,156 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.archiver;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.eclipse.microprofile.context.ManagedExecutor;
+import org.jboss.pnc.cleaner.orchApi.OrchClientProducer;
+import org.jboss.pnc.client.BuildClient;
+import org.jboss.pnc.common.pnc.LongBase32IdConverter;
+import org.jboss.pnc.dto.Build;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.jboss.pnc.cleaner.archiver.BuildArchiver.BUILD_ARCHIVED;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests the merge-join of the builds in PNC with the archived builds. PNC pages and archive batches end at different
+ * ids, so the id ranges of the two sides interleave across the page boundaries.
+ */
+class BuildArchiveReconcilerTest {
+
+    private BuildArchiveReconciler reconciler;
+
+    private List<Long> loadedBatchStarts;
+
+    @BeforeEach
+    void setUp() {
+        reconciler = new BuildArchiveReconciler();
+        reconciler.registry = new SimpleMeterRegistry();
+        reconciler.concurrency = 2;
+        loadedBatchStarts = new ArrayList<>();
+    }
+
+    @Test
+    void shouldReportRecordsMissingOnEachSide() {
+        // PNC pages: [1, 2], [4, 6], [7, 10]
+        Iterator<Build> pncBuilds = pages(
+                List.of(build(1, true), build(2, true)),
+                List.of(build(4, false), build(6, false)),
+                List.of(build(7, true), build(10, true)));
+        // archive batches of 2: [1, 3], [4, 5], [7, 9]
+        BuildArchiveReconciler.ArchivedIds archivedIds = archivedIds(2, 1, 3, 4, 5, 7, 9);
+
+        BuildArchiveReconciler.Report report = reconciler.reconcile(pncBuilds, archivedIds, false);
+
+        assertEquals(6, report.getPncBuilds());
+        assertEquals(6, report.getArchivedBuilds());
+        // 2 and 10
+        assertEquals(2, report.getMarkedNotArchived());
+        // 4
+        assertEquals(1, report.getArchivedNotMarked());
+        // 3, 5 and 9
+        assertEquals(3, report.getArchivedDeletedInPnc());
+        assertEquals(0, report.getRepaired());
+        // a full last batch takes one more, empty, batch to find the end
+        assertEquals(List.of(Long.MIN_VALUE, 3L, 5L, 9L), loadedBatchStarts);
+    }
+
+    @Test
+    void shouldHandleEmptySides() {
+        BuildArchiveReconciler.Report onlyArchive = reconciler
+                .reconcile(pages(), archivedIds(10, 1, 2, 3), false);
+        BuildArchiveReconciler.Report onlyPnc = reconciler
+                .reconcile(pages(List.of(build(1, true), build(2, false))), archivedIds(10), false);
+
+        assertEquals(3, onlyArchive.getArchivedDeletedInPnc());
+        assertEquals(0, onlyArchive.getPncBuilds());
+        assertEquals(1, onlyPnc.getMarkedNotArchived());
+        assertEquals(2, onlyPnc.getPncBuilds());
+        assertEquals(0, onlyPnc.getArchivedBuilds());
+    }
+
+    @Test
+    void shouldRepairBothKindsOfDiscrepancies() throws Exception {
+        ManagedExecutor executor = Mockito.mock(ManagedExecutor.class);
+        Mockito.when(executor.runAsync(Mockito.any())).thenAnswer(invocation -> {
+            try {
+                ((Runnable) invocation.getArgument(0)).run();
+                return CompletableFuture.completedFuture(null);
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        });
+        BuildArchiver buildArchiver = Mockito.mock(BuildArchiver.class);
+        BuildClient buildClient = Mockito.mock(BuildClient.class);
+        OrchClientProducer orchClientProducer = Mockito.mock(OrchClientProducer.class);
+        Mockito.when(orchClientProducer.getAuthenticatedBuildClient()).thenReturn(buildClient);
+        reconciler.executor = executor;
+        reconciler.buildArchiver = buildArchiver;
+        reconciler.orchClientProducer = orchClientProducer;
+
+        Build notArchived = build(2, true);
+        Build failing = build(3, true);
+        Mockito.doThrow(new RuntimeException("archive down")).when(buildArchiver).archiveBuild(failing);
+        BuildArchiveReconciler.Report report = reconciler
+                .reconcile(pages(List.of(build(1, false), notArchived), List.of(failing)), archivedIds(10, 1), true);
+
+        assertEquals(2, report.getRepaired());
+        assertEquals(1, report.getRepairFailed());
+        Mockito.verify(buildArchiver).archiveBuild(notArchived);
+        Mockito.verify(buildArchiver).archiveBuild(failing);
+        Mockito.verify(buildClient).addAttribute(LongBase32IdConverter.toString(1), BUILD_ARCHIVED, "true");
+    }
+
+    private static Build build(long id, boolean marked) {
+        return Build.builder()
+                .id(LongBase32IdConverter.toString(id))
+                .attributes(marked ? Map.of(BUILD_ARCHIVED, "true") : Map.of())
+                .build();
+    }
+
+    @SafeVarargs
+    private static Iterator<Build> pages(List<Build>... pages) {
+        return Stream.of(pages).flatMap(List::stream).iterator();
+    }
+
+    /**
+     * Archived ids served in batches the same way as the keyset paginated query does.
+     */
+    private BuildArchiveReconciler.ArchivedIds archivedIds(int batchSize, long... ids) {
+        return new BuildArchiveReconciler.ArchivedIds((after, limit) -> {
+            loadedBatchStarts.add(after);
+            return Arrays.stream(ids)
+                    .filter(id -> id > after)
+                    .limit(limit)
+                    .boxed()
+                    .collect(Collectors.toList());
+        }, batchSize);
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.archiver;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.eclipse.microprofile.context.ManagedExecutor;
+import org.jboss.pnc.common.pnc.LongBase32IdConverter;
+import org.jboss.pnc.dto.Build;
+import org.jboss.pnc.enums.BuildStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the distribution of the builds to the archive lanes, the archiving itself is stubbed.
+ */
+class BuildArchiverLanesTest {
+
+    private ExecutorService pool;
+
+    private BuildArchiver buildArchiver;
+
+    private final Map<String, AtomicInteger> archived = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        pool = Executors.newFixedThreadPool(4);
+        ManagedExecutor executor = Mockito.mock(ManagedExecutor.class);
+        Mockito.when(executor.runAsync(Mockito.any()))
+                .thenAnswer(invocation -> CompletableFuture.runAsync(invocation.getArgument(0), pool));
+
+        buildArchiver = Mockito.spy(new BuildArchiver());
+        buildArchiver.executor = executor;
+        buildArchiver.registry = new SimpleMeterRegistry();
+        buildArchiver.errorsLaneConcurrency = 2;
+        buildArchiver.temporaryLaneConcurrency = 1;
+        buildArchiver.bulkLaneConcurrency = 1;
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void shouldArchiveEachBuildOnceAcrossLanes() {
+        List<Build> builds = new ArrayList<>();
+        for (int i = 1; i <= 30; i++) {
+            builds.add(build(i, i % 3 == 0 ? BuildStatus.FAILED : BuildStatus.SUCCESS, i % 3 == 1));
+        }
+        Mockito.doAnswer(invocation -> count(invocation.getArgument(0)))
+                .when(buildArchiver)
+                .archiveBuild(Mockito.any());
+
+        buildArchiver.archiveInLanes(builds);
+
+        assertEquals(builds.size(), archived.size());
+        archived.forEach((id, count) -> assertEquals(1, count.get(), "Build " + id + " archived more than once"));
+    }
+
+    @Test
+    void shouldKeepArchivingWhenOneLaneFails() {
+        List<Build> builds = new ArrayList<>();
+        for (int i = 1; i <= 12; i++) {
+            builds.add(build(i, i % 3 == 0 ? BuildStatus.SYSTEM_ERROR : BuildStatus.SUCCESS, i % 3 == 1));
+        }
+        Mockito.doAnswer(invocation -> {
+            Build build = invocation.getArgument(0);
+            count(build);
+            if (ArchiveLane.of(build) == ArchiveLane.ERRORS) {
+                throw new IllegalStateException("Cannot archive " + build.getId());
+            }
+            return null;
+        }).when(buildArchiver).archiveBuild(Mockito.any());
+
+        buildArchiver.archiveInLanes(builds);
+
+        // every build was tried exactly once, the failures neither stopped the other lanes nor the failing one
+        assertEquals(builds.size(), archived.size());
+        archived.forEach((id, count) -> assertEquals(1, count.get(), "Build " + id + " archived more than once"));
+    }
+
+    @Test
+    void shouldRunLanesAtTheSameTime() throws Exception {
+        Build temporary = build(1, BuildStatus.SUCCESS, true);
+        Build bulk = build(2, BuildStatus.SUCCESS, false);
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        Mockito.doAnswer(invocation -> {
+            bothStarted.countDown();
+            // a lane waiting behind the other one would never see the latch released
+            assertTrue(bothStarted.await(10, TimeUnit.SECONDS), "Lanes did not run concurrently");
+            return count(invocation.getArgument(0));
+        }).when(buildArchiver).archiveBuild(Mockito.any());
+
+        buildArchiver.archiveInLanes(List.of(temporary, bulk));
+
+        assertEquals(2, archived.size());
+        assertEquals(0, bothStarted.getCount());
+    }
+
+    @Test
+    void shouldSkipBuildAlreadyBeingArchived() throws Exception {
+        Build build = build(1, BuildStatus.SUCCESS, false);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Mockito.doAnswer(invocation -> {
+            started.countDown();
+            assertTrue(release.await(10, TimeUnit.SECONDS));
+            return count(invocation.getArgument(0));
+        }).when(buildArchiver).archiveBuild(Mockito.any());
+
+        // the scheduled sweep picks up the build the notified batch is still archiving
+        CompletableFuture<Void> first = CompletableFuture.runAsync(() -> buildArchiver.archiveInLanes(List.of(build)));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        buildArchiver.archiveInLanes(List.of(build));
+        release.countDown();
+        first.get(10, TimeUnit.SECONDS);
+
+        assertEquals(1, archived.get(build.getId()).get());
+    }
+
+    private Object count(Build build) {
+        archived.computeIfAbsent(build.getId(), id -> new AtomicInteger()).incrementAndGet();
+        return null;
+    }
+
+    private static Build build(long id, BuildStatus status, boolean temporary) {
+        return Build.builder()
+                .id(LongBase32IdConverter.toString(id))
+                .status(status)
+                .temporaryBuild(temporary)
+                .endTime(Instant.now())
+                .build();
+    }
+}
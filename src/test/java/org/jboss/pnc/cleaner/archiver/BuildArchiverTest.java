@@ -46,9 +46,12 @@ import jakarta.inject.Inject;
 import java.io.BufferedReader;
 import java.io.StringReader;
 import java.time.Instant;
+import java.time.LocalDate;
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @QuarkusTest
 class BuildArchiverTest {
@@ -59,6 +62,9 @@ class BuildArchiverTest {
     @Inject
     BuildArchiver buildArchiver;
 
+    @Inject
+    ArchivedBuildStats archivedBuildStats;
+
     @BeforeAll
     public static void setup() throws RemoteResourceException {
         OrchClientProducer producer = Mockito.mock(OrchClientProducer.class);
@@ -193,6 +199,66 @@ class BuildArchiverTest {
         assertEquals(4, archivedBuild.submitMonth);
         assertEquals(2, archivedBuild.submitQuarter);
         assertEquals("MVN-WRAPPED-NPM", archivedBuild.buildType);
+        assertEquals(buildLog.getTrimmedLog(), readStoredColumn("trimmed_buildlog"));
+        assertEquals(alignmentLog.getTrimmedLog(), readStoredColumn("trimmed_repourlog"));
+    }
+
+    @Test
+    void testArchiveBuildRecordWithTrimmedErrorLog() {
+        Build build = prepareBuild();
+        StringBuilder log = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            log.append("[ERROR] Failed to execute goal, attempt ").append(i).append('\n');
+        }
+        LogParser buildLog = prepareLog(log.toString());
+        LogParser alignmentLog = prepareLog("[ERROR] Alignment failed\n");
+
+        buildArchiver.archiveBuildRecord(build, buildLog, alignmentLog);
+
+        // only the tail of the log fits into the trimmed log
+        String storedBuildLog = readStoredColumn("trimmed_buildlog");
+        assertTrue(storedBuildLog.endsWith("attempt 19"));
+        assertEquals(buildLog.getTrimmedLog(), storedBuildLog);
+        assertEquals(buildLog.getTrimmedLogLength(), storedBuildLog.length());
+        assertEquals("[ERROR] Alignment failed", readStoredColumn("trimmed_repourlog"));
+    }
+
+    @Test
+    void testArchiveBuildRecordWithoutLogsStoresNull() {
+        Build build = prepareBuild();
+
+        buildArchiver.archiveBuildRecord(build, BuildCategorizer.getLogParser(0), prepareLog(""));
+
+        assertNull(readStoredColumn("trimmed_buildlog"));
+        assertNull(readStoredColumn("trimmed_repourlog"));
+    }
+
+    private String readStoredColumn(String column) {
+        return (String) ArchivedBuildRecord.getEntityManager()
+                .createNativeQuery("SELECT " + column + " FROM _archived_buildrecords WHERE buildrecord_id = :id")
+                .setParameter("id", LongBase32IdConverter.toLong(BUILD_ID))
+                .getSingleResult();
+    }
+
+    @Test
+    void testArchiveBuildRecordAgainDoesNotChangeStats() {
+        Build build = prepareBuild();
+        buildArchiver.archiveBuildRecord(build, prepareLog("[INFO] BUILD SUCCESS"), prepareLog(""));
+        long archivedOnce = countSuccessfulBuildsOnSubmitDay();
+
+        buildArchiver.archiveBuildRecord(build, prepareLog("[INFO] BUILD SUCCESS"), prepareLog(""));
+
+        assertEquals(archivedOnce, countSuccessfulBuildsOnSubmitDay());
+        assertTrue(archivedOnce > 0);
+    }
+
+    private long countSuccessfulBuildsOnSubmitDay() {
+        return archivedBuildStats
+                .find(LocalDate.parse("2024-04-16"), LocalDate.parse("2024-04-17"), ArchivedBuildStats.Granularity.DAY)
+                .stream()
+                .filter(row -> row.getStatus().equals(BuildStatus.SUCCESS.name()))
+                .mapToLong(ArchivedBuildStatsRow::getCount)
+                .sum();
     }
 
     private LogParser prepareLog(String log) {
@@ -0,0 +1,104 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.archiver;
+
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import org.jboss.pnc.enums.BuildStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@QuarkusTest
+class LegacyLogMigrationTest {
+
+    private static final long PROJECT_ID = 464646L;
+
+    private static final long BUILD_ID = 940_000L;
+
+    @Inject
+    LegacyLogMigration legacyLogMigration;
+
+    @Inject
+    EntityManager entityManager;
+
+    @BeforeEach
+    void seed() {
+        QuarkusTransaction.requiringNew().run(() -> {
+            ArchivedBuildRecord.delete("projectID", PROJECT_ID);
+            ArchivedBuildRecord record = new ArchivedBuildRecord();
+            record.buildRecordId = BUILD_ID;
+            record.archivedTime = Instant.now();
+            record.submitTime = Instant.parse("2020-01-01T00:00:00Z");
+            record.status = BuildStatus.FAILED;
+            record.projectID = PROJECT_ID;
+            record.persist();
+        });
+        // the log as written by the older versions
+        QuarkusTransaction.requiringNew()
+                .run(
+                        () -> entityManager
+                                .createNativeQuery(
+                                        "UPDATE _archived_buildrecords SET trimmed_buildlog_oid ="
+                                                + " lo_from_bytea(0, convert_to('legacy build log', 'UTF8'))"
+                                                + " WHERE buildrecord_id = :id")
+                                .setParameter("id", BUILD_ID)
+                                .executeUpdate());
+    }
+
+    @Test
+    void shouldMoveLargeObjectsToTextAndUnlinkThem() {
+        assertTrue(legacyLogMigration.hasLegacyColumns());
+
+        long[] moved = legacyLogMigration.moveBatch(BUILD_ID - 1, 10);
+        long[] next = legacyLogMigration.moveBatch(moved[2], 10);
+
+        assertEquals(1, moved[0]);
+        assertEquals(1, moved[1]);
+        assertEquals(BUILD_ID, moved[2]);
+        assertEquals(0, next[0]);
+        assertEquals(BUILD_ID, next[2]);
+        QuarkusTransaction.requiringNew().run(() -> {
+            ArchivedBuildRecord record = ArchivedBuildRecord.findById(BUILD_ID);
+            assertEquals("legacy build log", record.trimmedBuildLog);
+        });
+    }
+
+    @Test
+    void shouldKeepLogsArchivedAgainAndUnlinkTheLargeObjects() {
+        QuarkusTransaction.requiringNew().run(() -> {
+            ArchivedBuildRecord record = ArchivedBuildRecord.findById(BUILD_ID);
+            record.trimmedBuildLog = "build log archived again";
+        });
+
+        long[] moved = legacyLogMigration.moveBatch(BUILD_ID - 1, 10);
+
+        assertEquals(1, moved[0]);
+        assertEquals(1, moved[1]);
+        QuarkusTransaction.requiringNew().run(() -> {
+            ArchivedBuildRecord record = ArchivedBuildRecord.findById(BUILD_ID);
+            assertEquals("build log archived again", record.trimmedBuildLog);
+        });
+    }
+}
@@ -74,6 +74,16 @@ class LogParserTest {
         assertEquals("Caught exception: line5\nline6", trimmedLog);
     }
 
+    @Test
+    public void testTrimmedLogLength() {
+        LogParser logParser = new LogParser(20);
+        String inputText = "line1\nline2\nline3\n\nline4\nline5\nline6";
+        StringReader reader = new StringReader(inputText);
+        logParser.findMatches(new BufferedReader(reader));
+
+        assertEquals(logParser.getTrimmedLog().length(), logParser.getTrimmedLogLength());
+    }
+
     @Test
     public void testLiteralFound() {
         LogParser logParser = new LogParser(0);
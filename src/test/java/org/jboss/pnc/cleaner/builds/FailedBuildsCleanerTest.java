@@ -18,6 +18,12 @@
 package org.jboss.pnc.cleaner.builds;
 
 import com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.TraceFlags;
+import io.opentelemetry.api.trace.TraceState;
+import io.opentelemetry.context.Scope;
 import io.quarkus.test.junit.QuarkusTest;
 
 import com.github.tomakehurst.wiremock.WireMockServer;
@@ -25,7 +31,11 @@ import com.github.tomakehurst.wiremock.WireMockServer;
 import org.commonjava.indy.client.core.Indy;
 import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.model.core.StoreType;
+import org.eclipse.microprofile.context.ManagedExecutor;
 import org.jboss.pnc.cleaner.common.TestConstants;
+import org.jboss.pnc.common.pnc.LongBase32IdConverter;
+import org.jboss.pnc.dto.Build;
+import org.jboss.pnc.enums.BuildStatus;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -34,21 +44,39 @@ import jakarta.inject.Inject;
 import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.LongStream;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
 import static com.github.tomakehurst.wiremock.client.WireMock.delete;
 import static com.github.tomakehurst.wiremock.client.WireMock.deleteRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
 import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.head;
+import static com.github.tomakehurst.wiremock.client.WireMock.matching;
+import static com.github.tomakehurst.wiremock.client.WireMock.headRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlMatching;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
 import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
 import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
 import static org.commonjava.indy.model.core.GenericPackageTypeDescriptor.GENERIC_PKG_KEY;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @QuarkusTest
@@ -66,6 +94,10 @@ class FailedBuildsCleanerTest {
 
     private static final String INDY_GENERIC_GROUPS_FILE = "indyGenericGroups.json";
 
+    private static final String INDY_GENERIC_GROUPS_ORPHANS_FILE = "indyGenericGroupsOrphans.json";
+
+    private static final String INDY_MAVEN_HOSTED_FILE = "indyMavenHosted.json";
+
     private static final String INDY_MAVEN_GROUPS_FILE = "indyMavenGroups.json";
 
     private static final String INDY_MAVEN_GROUPS_NO_BUILD_GROUP_FILE = "indyMavenGroupsNoBuildGroup.json";
@@ -78,6 +110,8 @@ class FailedBuildsCleanerTest {
 
     private static final String BUILD_RECORDS_FAILED_FILE = "buildRecordsFailed.json";
 
+    private static final String BUILD_RECORDS_FAILED_NO_CONTENTID_FILE = "buildRecordsFailedNoContentId.json";
+
     private static final String BUILD_RECORDS_NOT_FAILED_FILE = "buildRecordsNotFailed.json";
 
     private static final String EMPTY_RESPONSE_FILE = "emptyResponse.json";
@@ -89,6 +123,12 @@ class FailedBuildsCleanerTest {
     @Inject
     private FailedBuildsCleaner failedBuildsCleaner;
 
+    @Inject
+    ManagedExecutor executor;
+
+    @Inject
+    KeptBuildGroups keptBuildGroups;
+
     private ResponseDefinitionBuilder EMPTY_RESPONSE = aResponse().withStatus(200)
             .withBodyFile(EMPTY_RESPONSE_FILE)
             .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON);
@@ -131,6 +171,33 @@ class FailedBuildsCleanerTest {
         assertTrue(groupNames.contains("build-AK2VRKIH5GAAA"));
     }
 
+    /**
+     * Tests decoding of build ids from the build group names. It expects the ids of the 3 build groups in the list
+     * sorted, which are encoded back to the same group names.
+     */
+    @Test
+    public void getGroupIdsOk() {
+        indyWireMockServer.stubFor(
+                get(urlMatching(INDY_STORE_MAVEN_GROUP)).willReturn(
+                        aResponse().withStatus(200)
+                                .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON)
+                                .withBodyFile(INDY_MAVEN_GROUPS_FILE)));
+
+        // limit nor auth token is not important for getting group ids
+        Instant limit = Instant.now();
+        Indy indyClient = failedBuildsCleaner.initIndy("");
+        FailedBuildsCleanerSession session = new FailedBuildsCleanerSession(indyClient, limit);
+
+        long[] groupIds = failedBuildsCleaner.getGroupIds(MAVEN_PKG_KEY, session);
+
+        assertEquals(3, groupIds.length);
+        assertTrue(groupIds[0] < groupIds[1] && groupIds[1] < groupIds[2]);
+        List<String> groupNames = FailedBuildsCleaner.toGroupNames(groupIds, 0, groupIds.length);
+        assertTrue(groupNames.contains("build-AK2BHPRY6QAAA"));
+        assertTrue(groupNames.contains("build-ALR4VS6X4AAAA"));
+        assertTrue(groupNames.contains("build-AK2VRKIH5GAAA"));
+    }
+
     /**
      * Tests parsing of build group names from the list containing only maven groups that are usually in Indy with no
      * build groups. Then checks, if the resulting list is empty.
@@ -322,6 +389,35 @@ class FailedBuildsCleanerTest {
         assertFalse(clean);
     }
 
+    /**
+     * Tests batched loading of build records. One build is found by its build content id, one only by the id parsed
+     * from the group name and one group name can't be parsed at all, so it is expected to map to null.
+     */
+    @Test
+    public void getBuildRecordsBatch() throws CleanerException {
+        orchWireMockServer.stubFor(
+                get(urlMatching(ORCH_BUILDS + "?.*q=buildContentId%3Din%3D.*")).willReturn(
+                        aResponse().withStatus(200)
+                                .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON)
+                                .withBodyFile(BUILD_RECORDS_FAILED_FILE)));
+
+        orchWireMockServer.stubFor(
+                get(urlMatching(ORCH_BUILDS + "?.*q=id%3Din%3D.*")).willReturn(
+                        aResponse().withStatus(200)
+                                .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON)
+                                .withBodyFile(BUILD_RECORDS_FAILED_NO_CONTENTID_FILE)));
+
+        Map<String, Build> builds = failedBuildsCleaner
+                .getBuildRecords(List.of("build-36000", "build-AM64MA6WDVYAA", "build_old"));
+
+        assertEquals(3, builds.size());
+        assertEquals("36000", builds.get("build-36000").getId());
+        assertEquals("AM64MA6WDVYAA", builds.get("build-AM64MA6WDVYAA").getId());
+        assertNull(builds.get("build_old"));
+        orchWireMockServer.verify(1, getRequestedFor(urlMatching(ORCH_BUILDS + "?.*q=buildContentId%3Din%3D.*")));
+        orchWireMockServer.verify(1, getRequestedFor(urlMatching(ORCH_BUILDS + "?.*q=id%3Din%3D.*")));
+    }
+
     /**
      * Tests finding of build-related generic-http repositories. It reads a list of generic-http groups which contains 3
      * groups matching the requested build content id. It expects to get those 3 groups in the result along with the
@@ -467,4 +563,379 @@ class FailedBuildsCleanerTest {
         indyWireMockServer.verify(deleteRequestedFor(urlEqualTo(INDY_FOLO_ADMIN_ENDPOINT + "/build-36000/record")));
     }
 
+    /**
+     * Tests the whole cleanup logic for 1 build whose hosted repo and tracking record are already gone. It expects that
+     * deletes are sent without existence checks and that the missing stores don't stop the cleanup.
+     */
+    @Test
+    public void cleanBuildIfNeededStoresGone() {
+        orchWireMockServer.stubFor(
+                get(urlMatching(ORCH_BUILDS + "?.*q=buildContentId%3D%3Dbuild-36000")).willReturn(
+                        aResponse().withStatus(200)
+                                .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON)
+                                .withBodyFile(BUILD_RECORDS_FAILED_FILE)));
+
+        indyWireMockServer.stubFor(
+                get(INDY_STORE_GENERIC_GROUP).willReturn(
+                        aResponse().withStatus(200)
+                                .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON)
+                                .withBodyFile(INDY_GENERIC_GROUPS_FILE)));
+
+        indyWireMockServer
+                .stubFor(delete(INDY_STORE_MAVEN_GROUP + "/build-36000").willReturn(aResponse().withStatus(204)));
+        indyWireMockServer
+                .stubFor(delete(INDY_STORE_MAVEN_HOSTED + "/build-36000").willReturn(aResponse().withStatus(404)));
+        indyWireMockServer.stubFor(
+                delete(INDY_FOLO_ADMIN_ENDPOINT + "/build-36000/record").willReturn(aResponse().withStatus(404)));
+
+        // limit is set to be after the build record end time
+        Instant limit = Instant.ofEpochMilli(1581174847000L);
+        // auth token is not important for getting group names
+        Indy indyClient = failedBuildsCleaner.initIndy("");
+        FailedBuildsCleanerSession session = new FailedBuildsCleanerSession(indyClient, limit);
+
+        failedBuildsCleaner.cleanBuildIfNeeded(MAVEN_PKG_KEY, "build-36000", session);
+
+        indyWireMockServer.verify(0, headRequestedFor(urlMatching(INDY_STORE_ENDPOINT + "/.*")));
+        indyWireMockServer.verify(deleteRequestedFor(urlEqualTo(INDY_STORE_MAVEN_GROUP + "/build-36000")));
+        indyWireMockServer.verify(deleteRequestedFor(urlEqualTo(INDY_FOLO_ADMIN_ENDPOINT + "/build-36000/record")));
+        // the hosted repo is deleted only after the groups and the tracking record are done
+        indyWireMockServer.verify(deleteRequestedFor(urlEqualTo(INDY_STORE_MAVEN_HOSTED + "/build-36000")));
+    }
+
+    /**
+     * Tests that a run whose time budget is spent stops before cleaning anything and keeps the position of the previous
+     * run, and that a run which continues after the last group finishes and clears the position.
+     */
+    @Test
+    public void processGroupsResumesFromCursor() {
+        Instant limit = Instant.now();
+        Indy indyClient = failedBuildsCleaner.initIndy("");
+        FailedBuildsCleanerSession session = new FailedBuildsCleanerSession(indyClient, limit);
+        long[] groupIds = new long[] { 10L, 20L, 30L };
+        failedBuildsCleaner.saveCursor(MAVEN_PKG_KEY, 20L);
+
+        boolean finished = failedBuildsCleaner.processGroups(MAVEN_PKG_KEY, groupIds, Instant.MIN, true, session);
+
+        assertFalse(finished);
+        assertEquals(20L, failedBuildsCleaner.loadCursor(MAVEN_PKG_KEY));
+
+        failedBuildsCleaner.saveCursor(MAVEN_PKG_KEY, 30L);
+
+        finished = failedBuildsCleaner.processGroups(MAVEN_PKG_KEY, groupIds, Instant.MAX, true, session);
+
+        assertTrue(finished);
+        assertNull(failedBuildsCleaner.loadCursor(MAVEN_PKG_KEY));
+        orchWireMockServer.verify(0, getRequestedFor(urlMatching(ORCH_BUILDS + ".*")));
+    }
+
+    /**
+     * Tests finding of stores left without their build group. The maven hosted repo of a build with a group is not an
+     * orphan, neither are generic groups of builds which have a build group or an orphaned hosted repo.
+     */
+    @Test
+    public void findOrphansOk() {
+        indyWireMockServer.stubFor(
+                get(urlMatching(INDY_STORE_MAVEN_GROUP)).willReturn(
+                        aResponse().withStatus(200)
+                                .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON)
+                                .withBodyFile(INDY_MAVEN_GROUPS_FILE)));
+        indyWireMockServer.stubFor(
+                get(urlMatching(INDY_STORE_MAVEN_HOSTED)).willReturn(
+                        aResponse().withStatus(200)
+                                .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON)
+                                .withBodyFile(INDY_MAVEN_HOSTED_FILE)));
+        indyWireMockServer.stubFor(
+                get(urlMatching(INDY_STORE_ENDPOINT + "/npm/(group|hosted)")).willReturn(
+                        aResponse().withStatus(200)
+                                .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON)
+                                .withBody("{ \"items\" : [ ] }")));
+        indyWireMockServer.stubFor(
+                get(INDY_STORE_GENERIC_GROUP).willReturn(
+                        aResponse().withStatus(200)
+                                .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON)
+                                .withBodyFile(INDY_GENERIC_GROUPS_ORPHANS_FILE)));
+
+        Indy indyClient = failedBuildsCleaner.initIndy("");
+        FailedBuildsCleanerSession session = new FailedBuildsCleanerSession(indyClient, Instant.now());
+
+        Map<String, long[]> orphans = failedBuildsCleaner.findOrphans(session);
+
+        assertArrayEquals(new long[] { LongBase32IdConverter.toLong("AM64MA6WDVYAA") }, orphans.get(MAVEN_PKG_KEY));
+        assertArrayEquals(new long[0], orphans.get("npm"));
+        assertArrayEquals(
+                new long[] { LongBase32IdConverter.toLong("AM64MA6WDVYAQ") },
+                orphans.get(GENERIC_PKG_KEY));
+    }
+
+    /**
+     * Tests the sweep of orphaned stores. The build with an orphaned maven hosted repo is cleaned like by a regular
+     * run, including its generic-http stores. For the build with an orphaned generic-http group only that group and
+     * its constituent are deleted, no build group, hosted repo or tracking record named after the build.
+     */
+    @Test
+    public void sweepOrphansDeletesOnlyListedGenericStores() {
+        indyWireMockServer.stubFor(
+                get(urlMatching(INDY_STORE_MAVEN_GROUP)).willReturn(
+                        aResponse().withStatus(200)
+                                .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON)
+                                .withBodyFile(INDY_MAVEN_GROUPS_FILE)));
+        indyWireMockServer.stubFor(
+                get(urlMatching(INDY_STORE_MAVEN_HOSTED)).willReturn(
+                        aResponse().withStatus(200)
+                                .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON)
+                                .withBodyFile(INDY_MAVEN_HOSTED_FILE)));
+        indyWireMockServer.stubFor(
+                get(urlMatching(INDY_STORE_ENDPOINT + "/npm/(group|hosted)")).willReturn(
+                        aResponse().withStatus(200)
+                                .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON)
+                                .withBody("{ \"items\" : [ ] }")));
+        indyWireMockServer.stubFor(
+                get(INDY_STORE_GENERIC_GROUP).willReturn(
+                        aResponse().withStatus(200)
+                                .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON)
+                                .withBodyFile(INDY_GENERIC_GROUPS_ORPHANS_FILE)));
+        indyWireMockServer
+                .stubFor(delete(urlMatching(INDY_STORE_ENDPOINT + "/.*")).willReturn(aResponse().withStatus(204)));
+        indyWireMockServer.stubFor(
+                delete(urlMatching(INDY_FOLO_ADMIN_ENDPOINT + "/.*/record")).willReturn(aResponse().withStatus(204)));
+        // none of the builds is found in PNC, so all the orphans are cleaned
+        orchWireMockServer.stubFor(get(urlMatching(ORCH_BUILDS + "?.*q=.*")).willReturn(EMPTY_RESPONSE));
+
+        failedBuildsCleaner.sweepOrphans(Instant.now());
+
+        List<String> deletedStores = List.of(
+                INDY_STORE_MAVEN_GROUP + "/build-AM64MA6WDVYAA",
+                INDY_STORE_MAVEN_HOSTED + "/build-AM64MA6WDVYAA",
+                INDY_STORE_GENERIC_GROUP + "/g-repo-maven-org-build-AM64MA6WDVYAA",
+                INDY_STORE_ENDPOINT + "/generic-http/hosted/h-repo-maven-org-build-AM64MA6WDVYAA",
+                INDY_STORE_GENERIC_GROUP + "/g-github-com-build-AM64MA6WDVYAQ",
+                INDY_STORE_ENDPOINT + "/generic-http/hosted/h-github-com-build-AM64MA6WDVYAQ");
+        for (String store : deletedStores) {
+            indyWireMockServer.verify(1, deleteRequestedFor(urlPathEqualTo(store)));
+        }
+        indyWireMockServer.verify(deletedStores.size(), deleteRequestedFor(urlMatching(INDY_STORE_ENDPOINT + "/.*")));
+        indyWireMockServer
+                .verify(1, deleteRequestedFor(urlEqualTo(INDY_FOLO_ADMIN_ENDPOINT + "/build-AM64MA6WDVYAA/record")));
+        indyWireMockServer.verify(1, deleteRequestedFor(urlMatching(INDY_FOLO_ADMIN_ENDPOINT + "/.*")));
+    }
+
+    /**
+     * Tests the cleanup of sealed tracking records. Both builds are resolved by one batch query, are not found in PNC
+     * and their records get cleared. The record which doesn't belong to a build is left alone.
+     */
+    @Test
+    public void cleanSealedTrackingRecordsOk() {
+        indyWireMockServer.stubFor(
+                get(INDY_FOLO_ADMIN_ENDPOINT + "/report/ids/sealed").willReturn(
+                        aResponse().withStatus(200)
+                                .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON)
+                                .withBody(
+                                        "{ \"sealed\" : [ \"build-AM64MA6WDVYAA\", \"build-AM64MA6WDVYAQ\", "
+                                                + "\"manual-import\" ] }")));
+        indyWireMockServer.stubFor(
+                delete(urlMatching(INDY_FOLO_ADMIN_ENDPOINT + "/.*/record")).willReturn(aResponse().withStatus(204)));
+        orchWireMockServer.stubFor(get(urlMatching(ORCH_BUILDS + "?.*q=.*")).willReturn(EMPTY_RESPONSE));
+
+        int cleared = failedBuildsCleaner.cleanSealedTrackingRecords(Instant.now());
+
+        assertEquals(2, cleared);
+        orchWireMockServer.verify(1, getRequestedFor(urlMatching(ORCH_BUILDS + "?.*q=buildContentId%3Din%3D.*")));
+        indyWireMockServer
+                .verify(deleteRequestedFor(urlEqualTo(INDY_FOLO_ADMIN_ENDPOINT + "/build-AM64MA6WDVYAA/record")));
+        indyWireMockServer
+                .verify(deleteRequestedFor(urlEqualTo(INDY_FOLO_ADMIN_ENDPOINT + "/build-AM64MA6WDVYAQ/record")));
+        indyWireMockServer
+                .verify(0, deleteRequestedFor(urlEqualTo(INDY_FOLO_ADMIN_ENDPOINT + "/manual-import/record")));
+    }
+
+    /**
+     * Tests that the shared Indy client is created once and authenticates its requests with the service account token.
+     */
+    @Test
+    public void sharedIndyAddsToken() {
+        indyWireMockServer.stubFor(
+                get(urlMatching(INDY_STORE_MAVEN_GROUP)).willReturn(
+                        aResponse().withStatus(200)
+                                .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON)
+                                .withBodyFile(INDY_MAVEN_GROUPS_FILE)));
+
+        Indy indyClient = failedBuildsCleaner.getSharedIndy();
+        assertSame(indyClient, failedBuildsCleaner.getSharedIndy());
+        FailedBuildsCleanerSession session = new FailedBuildsCleanerSession(indyClient, Instant.now());
+
+        failedBuildsCleaner.getGroupNames(MAVEN_PKG_KEY, session);
+
+        indyWireMockServer.verify(
+                getRequestedFor(urlEqualTo(INDY_STORE_MAVEN_GROUP))
+                        .withHeader(HttpHeaders.AUTHORIZATION, equalTo("Bearer 1234")));
+    }
+
+    /**
+     * Tests that the workers of a pass with concurrency above 1 clean every group exactly once, never more than the
+     * configured number at a time, and that a failing group doesn't stop the others.
+     */
+    @Test
+    public void processGroupsConcurrently() {
+        Map<String, AtomicInteger> handled = new ConcurrentHashMap<>();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        String failingGroup = "build-" + LongBase32IdConverter.toString(7L);
+        FailedBuildsCleaner cleaner = new FailedBuildsCleaner() {
+            @Override
+            void cleanBuildIfNeeded(String packageType, String groupName, FailedBuildsCleanerSession session) {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    handled.computeIfAbsent(groupName, name -> new AtomicInteger()).incrementAndGet();
+                    Thread.sleep(1);
+                    if (groupName.equals(failingGroup)) {
+                        throw new IllegalStateException("Cleanup failed");
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    running.decrementAndGet();
+                }
+            }
+        };
+        cleaner.registry = new SimpleMeterRegistry();
+        cleaner.initMetrics();
+        cleaner.executor = executor;
+        cleaner.concurrency = 4;
+        cleaner.pncBatchSize = 1;
+        long[] groupIds = LongStream.rangeClosed(1, 250).toArray();
+        FailedBuildsCleanerSession session = new FailedBuildsCleanerSession(
+                failedBuildsCleaner.initIndy(""),
+                Instant.now());
+
+        boolean finished = cleaner.processGroups(MAVEN_PKG_KEY, groupIds, Instant.MAX, false, session);
+
+        assertTrue(finished);
+        assertEquals(groupIds.length, handled.size());
+        handled.forEach((group, count) -> assertEquals(1, count.get(), group + " was cleaned more than once"));
+        assertTrue(maxRunning.get() <= 4, "More than 4 groups were cleaned at a time: " + maxRunning.get());
+    }
+
+    /**
+     * Tests that a planning session only collects the decisions to keep groups and that they are stored when the plan
+     * is executed.
+     */
+    @Test
+    public void plannedKeptGroupsStoredOnExecution() {
+        long buildId = 424242L;
+        Build build = Build.builder()
+                .id(LongBase32IdConverter.toString(buildId))
+                .status(BuildStatus.SUCCESS)
+                .build();
+        FailedBuildsCleanerSession session = new FailedBuildsCleanerSession(
+                failedBuildsCleaner.initIndy(""),
+                Instant.now());
+        Queue<PlannedKeptGroup> plannedKeptGroups = new ConcurrentLinkedQueue<>();
+        session.setPlannedKeptGroups(plannedKeptGroups);
+        session.addKeptBuild(build);
+
+        failedBuildsCleaner.storeKeptBuilds(session);
+
+        assertEquals(List.of(PlannedKeptGroup.of(build)), new ArrayList<>(plannedKeptGroups));
+        assertTrue(Arrays.binarySearch(keptBuildGroups.getValidIds(), buildId) < 0);
+
+        int failures = failedBuildsCleaner.executePlanned(List.of(), plannedKeptGroups);
+
+        assertEquals(0, failures);
+        assertTrue(Arrays.binarySearch(keptBuildGroups.getValidIds(), buildId) >= 0);
+    }
+
+    /**
+     * Tests that the shared Indy client sends the trace of the span current in the thread making the request, not of
+     * the one it was created in.
+     */
+    @Test
+    public void sharedIndyAddsCurrentTraceHeaders() {
+        indyWireMockServer.stubFor(
+                get(urlMatching(INDY_STORE_MAVEN_GROUP)).willReturn(
+                        aResponse().withStatus(200)
+                                .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON)
+                                .withBodyFile(INDY_MAVEN_GROUPS_FILE)));
+        FailedBuildsCleanerSession session = new FailedBuildsCleanerSession(
+                failedBuildsCleaner.getSharedIndy(),
+                Instant.now());
+        SpanContext spanContext = SpanContext.create(
+                "0af7651916cd43dd8448eb211c80319c",
+                "b7ad6b7169203331",
+                TraceFlags.getSampled(),
+                TraceState.getDefault());
+
+        try (Scope scope = Span.wrap(spanContext).makeCurrent()) {
+            failedBuildsCleaner.getGroupNames(MAVEN_PKG_KEY, session);
+        }
+        failedBuildsCleaner.getGroupNames(MAVEN_PKG_KEY, session);
+
+        indyWireMockServer.verify(
+                1,
+                getRequestedFor(urlEqualTo(INDY_STORE_MAVEN_GROUP)).withHeader(
+                        "traceparent",
+                        matching(".*-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-.*")));
+        // no span is current for the second request
+        indyWireMockServer.verify(1, getRequestedFor(urlEqualTo(INDY_STORE_MAVEN_GROUP)).withoutHeader("traceparent"));
+    }
+
+    /**
+     * Tests a cleanup run with the maven and npm passes running concurrently on the managed executor. Both passes
+     * finish and each of them deletes the stores and tracking records of its own groups only.
+     */
+    @Test
+    public void cleanOlderRunsPackageTypePassesConcurrently() {
+        indyWireMockServer.stubFor(
+                get(urlMatching(INDY_STORE_MAVEN_GROUP)).willReturn(
+                        aResponse().withStatus(200)
+                                .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON)
+                                .withBodyFile(INDY_MAVEN_GROUPS_FILE)));
+        indyWireMockServer.stubFor(
+                get(urlMatching(INDY_STORE_ENDPOINT + "/npm/group")).willReturn(
+                        aResponse().withStatus(200)
+                                .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON)
+                                .withBody(
+                                        "{ \"items\" : [ { \"type\" : \"group\", "
+                                                + "\"key\" : \"npm:group:build-AM64MA6WDVYAA\", "
+                                                + "\"name\" : \"build-AM64MA6WDVYAA\", \"packageType\" : \"npm\", "
+                                                + "\"constituents\" : [ ] } ] }")));
+        indyWireMockServer.stubFor(
+                get(urlMatching(INDY_STORE_GENERIC_GROUP)).willReturn(
+                        aResponse().withStatus(200)
+                                .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON)
+                                .withBodyFile(INDY_GENERIC_GROUPS_FILE)));
+        indyWireMockServer
+                .stubFor(delete(urlMatching(INDY_STORE_ENDPOINT + "/.*")).willReturn(aResponse().withStatus(204)));
+        indyWireMockServer.stubFor(
+                delete(urlMatching(INDY_FOLO_ADMIN_ENDPOINT + "/.*/record")).willReturn(aResponse().withStatus(204)));
+        // none of the builds is found in PNC, so all of their groups are cleaned
+        orchWireMockServer.stubFor(get(urlMatching(ORCH_BUILDS + "?.*q=.*")).willReturn(EMPTY_RESPONSE));
+
+        assertTimeoutPreemptively(Duration.ofMinutes(1), () -> failedBuildsCleaner.cleanOlder(Instant.now()));
+
+        Map<String, List<String>> groupsByPackageType = Map.of(
+                MAVEN_PKG_KEY,
+                List.of("build-AK2BHPRY6QAAA", "build-ALR4VS6X4AAAA", "build-AK2VRKIH5GAAA"),
+                "npm",
+                List.of("build-AM64MA6WDVYAA"));
+        groupsByPackageType.forEach((packageType, groupNames) -> {
+            for (String groupName : groupNames) {
+                indyWireMockServer.verify(
+                        1,
+                        deleteRequestedFor(
+                                urlPathEqualTo(INDY_STORE_ENDPOINT + "/" + packageType + "/group/" + groupName)));
+                indyWireMockServer.verify(
+                        1,
+                        deleteRequestedFor(
+                                urlPathEqualTo(INDY_STORE_ENDPOINT + "/" + packageType + "/hosted/" + groupName)));
+                indyWireMockServer.verify(
+                        1,
+                        deleteRequestedFor(urlEqualTo(INDY_FOLO_ADMIN_ENDPOINT + "/" + groupName + "/record")));
+            }
+        });
+        // 2 stores of each of the 4 groups, no generic-http stores belong to them
+        indyWireMockServer.verify(8, deleteRequestedFor(urlMatching(INDY_STORE_ENDPOINT + "/.*")));
+        indyWireMockServer.verify(4, deleteRequestedFor(urlMatching(INDY_FOLO_ADMIN_ENDPOINT + "/.*")));
+    }
+
 }
@@ -0,0 +1,61 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.builds;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.commonjava.indy.client.core.IndyClientException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IndyClientMetricsTest {
+
+    private static final String CALLS = IndyOperations.class.getName() + ".calls";
+
+    private static final String IN_FLIGHT = IndyOperations.class.getName() + ".inflight";
+
+    @Test
+    public void shouldRecordCallsByOperationAndOutcome() throws IndyClientException {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        IndyClientMetrics metrics = new IndyClientMetrics(registry);
+
+        boolean exists = metrics.record("exists", () -> {
+            assertEquals(1.0, registry.get(IN_FLIGHT).tag("operation", "exists").gauge().value());
+            return true;
+        });
+        assertThrows(IndyClientException.class, () -> metrics.record("delete", () -> {
+            throw new IndyClientException(404, "Not found");
+        }));
+
+        assertTrue(exists);
+        assertEquals(1, registry.get(CALLS).tags("operation", "exists", "outcome", "success").timer().count());
+        assertEquals(1, registry.get(CALLS).tags("operation", "delete", "outcome", "not_found").timer().count());
+        assertEquals(0.0, registry.get(IN_FLIGHT).tag("operation", "exists").gauge().value());
+    }
+
+    @Test
+    public void shouldReduceStatusToOutcome() {
+        assertEquals(IndyClientMetrics.NOT_FOUND, IndyClientMetrics.outcome(404));
+        assertEquals(IndyClientMetrics.CLIENT_ERROR, IndyClientMetrics.outcome(409));
+        assertEquals(IndyClientMetrics.SERVER_ERROR, IndyClientMetrics.outcome(503));
+        assertEquals(IndyClientMetrics.ERROR, IndyClientMetrics.outcome(-1));
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.builds;
+
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import org.jboss.pnc.common.pnc.LongBase32IdConverter;
+import org.jboss.pnc.dto.Build;
+import org.jboss.pnc.enums.BuildProgress;
+import org.jboss.pnc.enums.BuildStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import jakarta.inject.Inject;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@QuarkusTest
+class KeptBuildGroupsTest {
+
+    private static final long KEPT_ID = 930_000L;
+
+    private static final long EXPIRED_ID = 930_001L;
+
+    private static final List<BuildStatus> FAILED_STATUSES = List.of(BuildStatus.FAILED);
+
+    @Inject
+    KeptBuildGroups keptBuildGroups;
+
+    @BeforeEach
+    void cleanup() {
+        QuarkusTransaction.requiringNew()
+                .run(() -> KeptBuildGroup.delete("buildRecordId in ?1", List.of(KEPT_ID, EXPIRED_ID)));
+    }
+
+    @Test
+    void shouldReturnOnlyDecisionsYoungerThanRevalidationInterval() {
+        keptBuildGroups.keep(List.of(build(KEPT_ID, BuildStatus.SUCCESS), build(EXPIRED_ID, BuildStatus.SUCCESS)));
+        QuarkusTransaction.requiringNew().run(() -> {
+            KeptBuildGroup expired = KeptBuildGroup.findById(EXPIRED_ID);
+            // far beyond the default revalidation interval of 30 days
+            expired.decisionTime = Instant.now().minus(365, ChronoUnit.DAYS);
+        });
+
+        long[] validIds = keptBuildGroups.getValidIds();
+
+        assertTrue(Arrays.binarySearch(validIds, KEPT_ID) >= 0);
+        assertTrue(Arrays.binarySearch(validIds, EXPIRED_ID) < 0);
+    }
+
+    @Test
+    void shouldKeepOnlyFinishedPersistentBuildsWhichDidNotFail() {
+        assertTrue(keptBuildGroups.isFinal(build(KEPT_ID, BuildStatus.SUCCESS), FAILED_STATUSES));
+        assertFalse(keptBuildGroups.isFinal(build(KEPT_ID, BuildStatus.FAILED), FAILED_STATUSES));
+        assertFalse(
+                keptBuildGroups.isFinal(
+                        build(KEPT_ID, BuildStatus.SUCCESS).toBuilder().temporaryBuild(true).build(),
+                        FAILED_STATUSES));
+        assertFalse(keptBuildGroups.isFinal(null, FAILED_STATUSES));
+    }
+
+    private static Build build(long id, BuildStatus status) {
+        return Build.builder()
+                .id(LongBase32IdConverter.toString(id))
+                .status(status)
+                .progress(BuildProgress.FINISHED)
+                .temporaryBuild(false)
+                .endTime(Instant.now())
+                .build();
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.builds;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the pacing of the permits against a fake clock, which moves only when a thread sleeps or the test moves it.
+ */
+class RateLimiterTest {
+
+    private static final long INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final AtomicLong clock = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+
+    private final List<Long> sleeps = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    void shouldSpaceBurstEvenly() {
+        RateLimiter rateLimiter = new RateLimiter(10, clock::get, this::sleepAndAdvance);
+
+        for (int i = 0; i < 5; i++) {
+            rateLimiter.acquire();
+        }
+
+        // the first permit is immediate, the others wait for their slot
+        assertEquals(List.of(INTERVAL, INTERVAL, INTERVAL, INTERVAL), sleeps);
+    }
+
+    @Test
+    void shouldNotWaitWhenCallsAreSlowerThanRate() {
+        RateLimiter rateLimiter = new RateLimiter(10, clock::get, this::sleepAndAdvance);
+
+        for (int i = 0; i < 5; i++) {
+            rateLimiter.acquire();
+            clock.addAndGet(2 * INTERVAL);
+        }
+
+        assertEquals(List.of(), sleeps);
+    }
+
+    @Test
+    void shouldNotAccumulatePermitsWhileIdle() {
+        RateLimiter rateLimiter = new RateLimiter(10, clock::get, this::sleepAndAdvance);
+
+        rateLimiter.acquire();
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        for (int i = 0; i < 3; i++) {
+            rateLimiter.acquire();
+        }
+
+        // the idle time does not allow a burst of 100 permits afterwards
+        assertEquals(List.of(INTERVAL, INTERVAL), sleeps);
+    }
+
+    @Test
+    void shouldGiveConcurrentThreadsDistinctSlots() throws InterruptedException {
+        // the clock stands still, so each thread is told how long after the first one it may proceed
+        RateLimiter rateLimiter = new RateLimiter(10, clock::get, sleeps::add);
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                rateLimiter.acquire();
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        // the first thread does not sleep
+        assertEquals(threads - 1, sleeps.size());
+        Set<Long> slots = new HashSet<>(sleeps);
+        for (long i = 1; i < threads; i++) {
+            assertTrue(slots.contains(i * INTERVAL), "Missing slot " + i);
+        }
+    }
+
+    @Test
+    void shouldNotLimitWithoutRate() {
+        RateLimiter rateLimiter = new RateLimiter(0, clock::get, this::sleepAndAdvance);
+
+        for (int i = 0; i < 100; i++) {
+            rateLimiter.acquire();
+        }
+
+        assertEquals(List.of(), sleeps);
+    }
+
+    @Test
+    void shouldFailWhenInterrupted() {
+        RateLimiter rateLimiter = new RateLimiter(10, clock::get, nanos -> {
+            throw new InterruptedException();
+        });
+
+        rateLimiter.acquire();
+        try {
+            assertThrows(IllegalStateException.class, rateLimiter::acquire);
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            // clear the flag for the other tests
+            Thread.interrupted();
+        }
+    }
+
+    private void sleepAndAdvance(long nanos) {
+        sleeps.add(nanos);
+        clock.addAndGet(nanos);
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.builds;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class SortedIdsTest {
+
+    private static final long[] EMPTY = new long[0];
+
+    @Test
+    void shouldSortDistinct() {
+        assertArrayEquals(new long[] { 1, 3, 5 }, SortedIds.sortDistinct(new long[] { 5, 1, 3, 1, 5, 5 }));
+        assertArrayEquals(new long[] { 2 }, SortedIds.sortDistinct(new long[] { 2, 2, 2 }));
+        assertArrayEquals(
+                new long[] { Long.MIN_VALUE, 0, Long.MAX_VALUE },
+                SortedIds.sortDistinct(new long[] { Long.MAX_VALUE, 0, Long.MIN_VALUE }));
+        assertArrayEquals(EMPTY, SortedIds.sortDistinct(EMPTY));
+    }
+
+    @Test
+    void shouldSortDistinctPrefixOnly() {
+        // the tail past the length is unused capacity of a growing array
+        assertArrayEquals(new long[] { 4, 9 }, SortedIds.sortDistinct(new long[] { 9, 4, 9, 0, 0, 0 }, 3));
+        assertArrayEquals(EMPTY, SortedIds.sortDistinct(new long[] { 7, 8 }, 0));
+    }
+
+    @Test
+    void shouldSubtract() {
+        assertArrayEquals(
+                new long[] { 1, 4, 7 },
+                SortedIds.difference(new long[] { 1, 2, 4, 5, 7 }, new long[] { 0, 2, 3, 5, 8 }));
+        assertArrayEquals(new long[] { 1, 2 }, SortedIds.difference(new long[] { 1, 2 }, EMPTY));
+        assertArrayEquals(EMPTY, SortedIds.difference(EMPTY, new long[] { 1, 2 }));
+        assertArrayEquals(EMPTY, SortedIds.difference(new long[] { 1, 2 }, new long[] { 1, 2 }));
+        // all excluded ids are lower or higher than the ids
+        assertArrayEquals(new long[] { 5, 6 }, SortedIds.difference(new long[] { 5, 6 }, new long[] { 1, 2 }));
+        assertArrayEquals(new long[] { 5, 6 }, SortedIds.difference(new long[] { 5, 6 }, new long[] { 8, 9 }));
+    }
+
+    @Test
+    void shouldUnite() {
+        assertArrayEquals(
+                new long[] { 0, 1, 2, 3, 4, 5, 7, 8 },
+                SortedIds.union(new long[] { 1, 2, 4, 5, 7 }, new long[] { 0, 2, 3, 5, 8 }));
+        assertArrayEquals(new long[] { 1, 2 }, SortedIds.union(new long[] { 1, 2 }, EMPTY));
+        assertArrayEquals(new long[] { 1, 2 }, SortedIds.union(EMPTY, new long[] { 1, 2 }));
+        assertArrayEquals(EMPTY, SortedIds.union(EMPTY, EMPTY));
+        // ids in both arrays are kept once
+        assertArrayEquals(new long[] { 3, 4 }, SortedIds.union(new long[] { 3, 4 }, new long[] { 3, 4 }));
+        assertArrayEquals(new long[] { 1, 2, 8, 9 }, SortedIds.union(new long[] { 8, 9 }, new long[] { 1, 2 }));
+    }
+}
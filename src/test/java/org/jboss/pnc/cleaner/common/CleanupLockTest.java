@@ -0,0 +1,70 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CleanupLockTest {
+
+    private final CleanupLock cleanupLock = new CleanupLock();
+
+    @Test
+    void shouldSkipScheduledCleanupWhilePlanExecutes() {
+        long stamp = cleanupLock.tryLockPlanExecution();
+        assertNotEquals(0, stamp);
+
+        assertFalse(cleanupLock.runScheduled("test", () -> {
+            throw new AssertionError("Cleanup ran during a plan execution");
+        }));
+        assertEquals(0, cleanupLock.tryLockPlanExecution());
+
+        cleanupLock.unlockPlanExecution(stamp);
+        assertTrue(cleanupLock.runScheduled("test", () -> {
+        }));
+    }
+
+    @Test
+    void shouldRunScheduledCleanupsTogetherButNoPlanExecution() {
+        assertTrue(
+                cleanupLock.runScheduled(
+                        "first",
+                        () -> assertTrue(
+                                cleanupLock.runScheduled(
+                                        "second",
+                                        () -> assertEquals(0, cleanupLock.tryLockPlanExecution())))));
+    }
+
+    @Test
+    void shouldReleasePlanExecutionFromAnotherThread() throws Exception {
+        long stamp = cleanupLock.tryLockPlanExecution();
+
+        CompletableFuture.runAsync(() -> cleanupLock.unlockPlanExecution(stamp)).get(10, TimeUnit.SECONDS);
+
+        long next = cleanupLock.tryLockPlanExecution();
+        assertNotEquals(0, next);
+        cleanupLock.unlockPlanExecution(next);
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.plan;
+
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import org.jboss.pnc.cleaner.builds.PlannedIndyCleanup;
+import org.jboss.pnc.cleaner.common.CleanupLock;
+import org.jboss.pnc.cleaner.temporaryBuilds.PlannedBuildDeletion;
+import org.junit.jupiter.api.Test;
+
+import jakarta.inject.Inject;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static io.restassured.RestAssured.given;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@QuarkusTest
+class CleanupPlannerTest {
+
+    @Inject
+    CleanupPlanner cleanupPlanner;
+
+    @Inject
+    CleanupLock cleanupLock;
+
+    @Test
+    void shouldEstimateRequestsOfPlannedItems() {
+        CleanupEstimate estimate = CleanupEstimate.of(
+                List.of(
+                        new PlannedIndyCleanup("maven", "build-1", List.of()),
+                        new PlannedIndyCleanup(
+                                "maven",
+                                "build-2",
+                                List.of("generic-http:group:g-a-build-2", "generic-http:remote:r-a-build-2"))),
+                List.of("10"),
+                List.of(new PlannedBuildDeletion("100", "200")));
+
+        assertEquals(6, estimate.getIndyStores());
+        assertEquals(2, estimate.getTrackingRecords());
+        assertEquals(1, estimate.getGroupBuilds());
+        assertEquals(1, estimate.getBuilds());
+        // 3 + 5 Indy requests, 1 group build and 3 requests for the build, its archive and final log
+        assertEquals(12, estimate.getRequests());
+    }
+
+    @Test
+    void shouldExecutePlanOnlyOnce() {
+        CleanupPlanView plan = cleanupPlanner.store(Instant.now(), Instant.now(), emptyContent());
+
+        CleanupPlanView executed = cleanupPlanner.execute(plan.getId());
+
+        assertEquals(CleanupPlan.Status.EXECUTED, executed.getStatus());
+        assertEquals(0, executed.getFailures());
+        assertNotNull(executed.getExecutedTime());
+        assertNull(executed.getContent());
+        given().post("/cleanup-plans/" + plan.getId() + "/execute").then().statusCode(409);
+    }
+
+    @Test
+    void shouldRefuseToExecuteStalePlan() {
+        CleanupPlanView plan = cleanupPlanner.store(Instant.now(), Instant.now(), emptyContent());
+        QuarkusTransaction.requiringNew().run(() -> {
+            CleanupPlan stored = CleanupPlan.findById(plan.getId());
+            // far beyond the default maximal age of 24 hours
+            stored.createdTime = Instant.now().minus(30, ChronoUnit.DAYS);
+        });
+
+        given().post("/cleanup-plans/" + plan.getId() + "/execute").then().statusCode(409);
+        assertEquals(CleanupPlan.Status.PLANNED, cleanupPlanner.get(plan.getId(), false).getStatus());
+    }
+
+    @Test
+    void shouldRefuseExecutionWhileScheduledCleanupRuns() {
+        CleanupPlanView plan = cleanupPlanner.store(Instant.now(), Instant.now(), emptyContent());
+
+        cleanupLock.runScheduled(
+                "test cleanup",
+                () -> given().post("/cleanup-plans/" + plan.getId() + "/execute").then().statusCode(409));
+
+        assertEquals(CleanupPlan.Status.PLANNED, cleanupPlanner.get(plan.getId(), false).getStatus());
+    }
+
+    @Test
+    void shouldFailPlansInterruptedByRestart() {
+        CleanupPlanView plan = cleanupPlanner.store(Instant.now(), Instant.now(), emptyContent());
+        QuarkusTransaction.requiringNew().run(() -> {
+            CleanupPlan stored = CleanupPlan.findById(plan.getId());
+            stored.status = CleanupPlan.Status.EXECUTING;
+        });
+
+        cleanupPlanner.failInterrupted();
+
+        assertEquals(CleanupPlan.Status.FAILED, cleanupPlanner.get(plan.getId(), false).getStatus());
+    }
+
+    @Test
+    void shouldReturnNotFoundForUnknownPlan() {
+        given().get("/cleanup-plans/" + Long.MAX_VALUE).then().statusCode(404);
+    }
+
+    private static CleanupPlanContent emptyContent() {
+        CleanupPlanContent content = new CleanupPlanContent(List.of(), List.of(), List.of(), List.of(), null);
+        content.setEstimate(CleanupEstimate.of(List.of(), List.of(), List.of()));
+        return content;
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2019-2022 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.cleaner.rest;
+
+import org.jboss.pnc.cleaner.plan.CleanupPlanner;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import jakarta.ws.rs.ForbiddenException;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CleanupPlansTest {
+
+    @Test
+    void shouldRefuseExecutionWhenNotEnabled() {
+        CleanupPlans cleanupPlans = new CleanupPlans();
+        cleanupPlans.cleanupPlanner = Mockito.mock(CleanupPlanner.class);
+
+        assertThrows(ForbiddenException.class, () -> cleanupPlans.executePlan(1L));
+        Mockito.verifyNoInteractions(cleanupPlans.cleanupPlanner);
+    }
+
+    @Test
+    void shouldRefusePlanningWhenNotEnabled() {
+        CleanupPlans cleanupPlans = new CleanupPlans();
+        cleanupPlans.cleanupPlanner = Mockito.mock(CleanupPlanner.class);
+
+        assertThrows(ForbiddenException.class, cleanupPlans::createPlan);
+        Mockito.verifyNoInteractions(cleanupPlans.cleanupPlanner);
+    }
+}